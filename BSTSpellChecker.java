@@ -1,60 +1,219 @@
-import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Scanner;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 // Implements a SpellChecker/Dictionary using a BSTSet data structure.
 
-public class BSTSpellChecker {
+public class BSTSpellChecker implements SpellChecker {
 
-	BinarySearchTree<String> wordList = new BinarySearchTree<>();
+	// The tree balances itself, since word lists are usually alphabetized and would otherwise
+	// turn it into a linked list.
+	BinarySearchTree<String> wordList = new BinarySearchTree<>(true);
+	EytzingerIndex lookupIndex; // array-backed copy of wordList used for lookups after buildLookupIndex(), or null
+	BitSet alphabet = new BitSet(); // every character used in a word so far, for closeMatches
+	private SpellCheckerMetrics metrics; // where closeMatches reports its candidates, or null
 	
+	@Override
 	public void add(String s){
+		lookupIndex = null; // the copy would be out of date
 		wordList.addIterative(s);
+		addToAlphabet(s);
 	}
 	
+	private void addToAlphabet(String s){
+		for (int i = 0; i < s.length(); i++){
+			alphabet.set(s.charAt(i));
+		}
+	}
+	
+	@Override
 	public boolean contains(String s){
+		if (lookupIndex != null) {
+			return lookupIndex.contains(s);
+		}
 		String result = wordList.findIterative(s); 
 		return result != null;
 	}
 	
-	// Reads in Strings from text file and adds them to BSTSpellChecker, but does so inefficiently if text file is alphabetized
-	public void addFile(String filename) throws FileNotFoundException {
-		try {
-			Scanner s = new Scanner(new File(filename));
-			
-			ArrayList<String> words = new ArrayList<>();
-			while (s.hasNext()){
-				words.add(s.next());
+	// Returns all of the words starting with s, in alphabetical order. They form one range of
+	// the sorted word list, from s up to (but not including) the first string after every
+	// completion of s, so the tree seeks straight to s and stops at the end of that range.
+	@Override
+	public Set<String> autocomplete(String s){
+		Set<String> result = new LinkedHashSet<>();
+		for (String word : range(s, prefixEnd(s))){
+			result.add(word);
+		}
+		return result;
+	}
+	
+	// Returns the words from from (inclusive) to to (exclusive) in alphabetical order, read
+	// lazily from the tree. A null bound leaves that side open.
+	public Iterable<String> range(String from, String to){
+		return () -> wordList.iterator(from, to);
+	}
+	
+	// Returns the smallest string greater than every string that starts with prefix, or null
+	// if there is none (an empty prefix, or one made of nothing but Character.MAX_VALUE).
+	private static String prefixEnd(String prefix){
+		int end = prefix.length();
+		while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE){
+			end--;
+		}
+		if (end == 0){
+			return null;
+		}
+		return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+	}
+	
+	// Returns the words that s can be made into with one insertion, deletion or replacement,
+	// plus s itself if it is a word. A tree can't be searched by edit distance, so every string
+	// one change away from s is looked up, using only the characters that occur in the list.
+	@Override
+	public Set<String> closeMatches(String s){
+		Set<String> result = new HashSet<>();
+		char[] letters = new char[alphabet.cardinality()];
+		int count = 0;
+		for (int c = alphabet.nextSetBit(0); c >= 0; c = alphabet.nextSetBit(c + 1)){
+			letters[count++] = (char) c;
+		}
+		long candidates = 0;
+		
+		if (contains(s)){
+			result.add(s);
+		}
+		candidates++;
+		char[] candidate = new char[s.length() + 1];
+		for (int i = 0; i < s.length(); i++){
+			// deletion of the letter at i
+			String deleted = s.substring(0, i) + s.substring(i + 1);
+			if (contains(deleted)){
+				result.add(deleted);
 			}
+			candidates++;
 			
-			s.close();
-			
-			for (String i : words){
-				this.add(i);
+			// replacements of the letter at i
+			s.getChars(0, s.length(), candidate, 0);
+			for (char letter : letters){
+				if (letter != s.charAt(i)){
+					candidate[i] = letter;
+					String replaced = new String(candidate, 0, s.length());
+					if (contains(replaced)){
+						result.add(replaced);
+					}
+					candidates++;
+				}
 			}
-			
-			
-		} catch (FileNotFoundException e){
-			throw new FileNotFoundException();
 		}
+		for (int i = 0; i <= s.length(); i++){
+			// insertions before position i
+			s.getChars(0, i, candidate, 0);
+			s.getChars(i, s.length(), candidate, i + 1);
+			for (char letter : letters){
+				candidate[i] = letter;
+				String inserted = new String(candidate);
+				if (contains(inserted)){
+					result.add(inserted);
+				}
+				candidates++;
+			}
+		}
+		
+		if (metrics != null){
+			metrics.recordCandidates(candidates);
+		}
+		return result;
+	}
+	
+	// Returns the number of words in the list.
+	@Override
+	public int size(){
+		return wordList.size();
+	}
+	
+	// Reports the candidates tried by each closeMatches call to metrics.
+	@Override
+	public void setMetrics(SpellCheckerMetrics metrics){
+		this.metrics = metrics;
+	}
+	
+	// Switches lookups to an array-backed copy of the word list (see EytzingerIndex), which is
+	// much faster than following tree nodes once the list is done loading. Unlike
+	// TrieSpellChecker.freeze, the checker can still be changed: adding another word drops the
+	// copy and switches back to the tree.
+	public void buildLookupIndex(){
+		List<String> words = new ArrayList<>();
+		for (String word : wordList){
+			words.add(word);
+		}
+		lookupIndex = new EytzingerIndex(words, true);
+	}
+	
+	// Checks a whole batch of words and returns a BitSet with bit i set when words[i] is in the
+	// list. Duplicates are only looked up once, and large batches are split across threads.
+	public BitSet containsAll(String[] words) {
+		return BatchLookup.check(words, (sorted, from, to, found) -> {
+			for (int i = from; i < to; i++) {
+				found[i] = contains(sorted[i]);
+			}
+		});
+	}
+
+	public BitSet containsAll(Collection<String> words) {
+		return containsAll(words.toArray(new String[0]));
+	}
+
+	// Reads in Strings from text file and adds them to BSTSpellChecker, streaming the words from
+	// the file and adding them as they are read. Since the tree balances itself this is
+	// O(n log n) even if the text file is alphabetized. Returns the number of words read.
+	public long addFile(String filename) throws FileNotFoundException {
+		long count = 0;
+		try (WordReader reader = new WordReader(filename)) {
+			String word;
+			while ((word = reader.next()) != null) {
+				this.add(word);
+				count++;
+			}
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return count;
 	}
 	
 
 	// reads in Strings from text file and adds them to a BSTSpellChecker that is balanced
+	// If the BSTSpellChecker is empty, the sorted words are built straight into a perfectly
+	// balanced tree, which takes O(n) for an alphabetized file (sorting an already sorted list
+	// is linear). Otherwise they are added one at a time.
 	public void balancedAddFile(String filename) throws FileNotFoundException{
 		try {
-			Scanner s = new Scanner(new File(filename));
-			
-			ArrayList<String> words = new ArrayList<>();
-			while (s.hasNext() && words.size()<7){
-				words.add(s.next());
+			List<String> words = WordReader.readAll(filename);
+			Collections.sort(words);
+			if (wordList.iterator().hasNext()) {
+				for (String word : words) {
+					add(word);
+				}
+			} else {
+				lookupIndex = null; // the copy would be out of date
+				wordList.buildFromSorted(words);
+				for (String word : words) {
+					addToAlphabet(word);
+				}
 			}
-	
-			recursiveAdd(words);
-			s.close();
 		} catch (FileNotFoundException e){
-			throw new FileNotFoundException();
+			throw e;
+		} catch (IOException e){
+			throw new UncheckedIOException(e);
 		}
 	}
 	
@@ -65,7 +224,7 @@ public class BSTSpellChecker {
 	}
 	
 	
-	// recursive call that is used in the balancedAddFile method()
+	// recursive call that is used to add a sorted list in balanced order
 	// similar to recursive binary search method-->divide and conquer and add middle element of subarrary to BST
 	public void recursiveAdd(int start, int end, ArrayList<String> s){
 		if (start > end){
@@ -73,7 +232,7 @@ public class BSTSpellChecker {
 		} else {
 			int middle = (end + start) / 2;
 			add(s.get(middle));
-			recursiveAdd(0, middle - 1, s);
+			recursiveAdd(start, middle - 1, s);
 			recursiveAdd(middle + 1, end, s);
 		}
 	}
@@ -102,6 +261,7 @@ public class BSTSpellChecker {
 		
 		System.out.println(test.contains("abated"));
 		System.out.println(test.contains("Roger"));
+		System.out.println(test.autocomplete("abat"));
 		
 		// testing of addFile method
 		test.addFile("wordlist_english.txt");
@@ -0,0 +1,84 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Shared driver for the containsAll methods of the spell checkers. Duplicates are dropped and the
+// rest of the batch is sorted, so a checker can walk neighbouring words together, and large
+// batches are split into ranges that are checked in parallel on the fork-join pool.
+
+class BatchLookup {
+
+	// Ranges at or below this size are checked on one thread.
+	private static final int SPLIT_SIZE = 4096;
+
+	// Checks the sorted, distinct words in [from, to) and records each result in found.
+	interface RangeChecker {
+		void check(String[] sorted, int from, int to, boolean[] found);
+	}
+
+	// Returns a BitSet with bit i set when words[i] was found by the checker.
+	static BitSet check(String[] words, RangeChecker checker) {
+		// Real documents repeat the same words over and over, so duplicates are dropped with a
+		// hash map first and only the distinct words are sorted and checked.
+		Map<String, Integer> positions = new HashMap<>();
+		for (String word : words) {
+			positions.putIfAbsent(word, 0);
+		}
+		String[] sorted = positions.keySet().toArray(new String[0]);
+		if (sorted.length > SPLIT_SIZE) {
+			Arrays.parallelSort(sorted);
+		} else {
+			Arrays.sort(sorted);
+		}
+		for (int i = 0; i < sorted.length; i++) {
+			positions.put(sorted[i], i);
+		}
+
+		boolean[] found = new boolean[sorted.length];
+		if (sorted.length <= SPLIT_SIZE) {
+			checker.check(sorted, 0, sorted.length, found);
+		} else {
+			ForkJoinPool.commonPool().invoke(new Split(sorted, 0, sorted.length, found, checker));
+		}
+
+		BitSet result = new BitSet(words.length);
+		for (int i = 0; i < words.length; i++) {
+			if (found[positions.get(words[i])]) {
+				result.set(i);
+			}
+		}
+		return result;
+	}
+
+	// Splits a range in half until it is small enough to check directly.
+	private static class Split extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final String[] sorted;
+		private final int from, to;
+		private final boolean[] found;
+		private final RangeChecker checker;
+
+		public Split(String[] sorted, int from, int to, boolean[] found, RangeChecker checker) {
+			this.sorted = sorted;
+			this.from = from;
+			this.to = to;
+			this.found = found;
+			this.checker = checker;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SPLIT_SIZE) {
+				checker.check(sorted, from, to, found);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Split(sorted, from, middle, found, checker),
+						new Split(sorted, middle, to, found, checker));
+			}
+		}
+	}
+}
@@ -1,6 +1,8 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.Stack;
 
 /*
  * Implementation of a binary search tree.
@@ -19,6 +21,7 @@ public class BinarySearchTree<E extends Comparable<E>> implements Iterable<E> {
 	private static class Node<E> {
 		private E data;
 		private Node<E> left, right;
+		private int height = 1; // only kept up to date in a balanced tree
 
 		public Node(E data, Node<E> left, Node<E> right) {
 			this.data = data;
@@ -27,18 +30,35 @@ public class BinarySearchTree<E extends Comparable<E>> implements Iterable<E> {
 		}
 	}
 
-	// Nested class that implements an in-order iterator over the BST. We
-	// maintain the current node where the iterator is, along with a stack to track which
-	// nodes still need to be visited.
+	// Nested class that implements an in-order iterator over the BST. The stack holds the nodes
+	// still to be visited whose left subtrees are done, so its top is always the next element.
+	// The iterator can start at a lower bound and stop before an upper bound, so iterating over a
+	// range costs O(log n + k) for k elements instead of walking the tree from the minimum.
 	
 	private class InOrderIterator implements Iterator<E> {
-		private Node<E> current = root;
-		private Stack<Node<E>> s = new Stack<>();
+		private ArrayDeque<Node<E>> s = new ArrayDeque<>();
+		private E to; // exclusive upper bound, or null for no bound
+
+		// Iterates over the elements from from (inclusive) to to (exclusive); a null bound means
+		// that side is unbounded.
+		public InOrderIterator(E from, E to) {
+			this.to = to;
+			// Seek down to from, keeping every node on the way that is not less than it.
+			Node<E> current = root;
+			while (current != null) {
+				if (from == null || current.data.compareTo(from) >= 0) {
+					s.push(current);
+					current = current.left;
+				} else {
+					current = current.right;
+				}
+			}
+		}
 
 		// Returns whether there is a next element in the iteration.
 		@Override
 		public boolean hasNext() {
-			return !(current == null && s.isEmpty());
+			return !s.isEmpty() && (to == null || s.peek().data.compareTo(to) < 0);
 		}
 
 		// Returns the next element in the iteration, and advances the
@@ -46,12 +66,12 @@ public class BinarySearchTree<E extends Comparable<E>> implements Iterable<E> {
 		@Override
 		public E next() {
 			if (hasNext()) {
+				Node<E> popped = s.pop();
+				Node<E> current = popped.right;
 				while (current != null) {
 					s.push(current);
 					current = current.left;
 				}
-				Node<E> popped = s.pop();
-				current = popped.right;
 				return popped.data;
 			} else
 				throw new NoSuchElementException();
@@ -66,10 +86,79 @@ public class BinarySearchTree<E extends Comparable<E>> implements Iterable<E> {
 
 	private Node<E> root;
 	private E deleteReturn; // tracks which item was just deleted from the tree
+	private int size; // number of items in the tree
+	private final boolean balanced; // whether the tree keeps itself balanced as an AVL tree
+
+	// Creates a plain, unbalanced binary search tree.
+	public BinarySearchTree() {
+		this(false);
+	}
+
+	// Creates a binary search tree that, if balanced is true, rebalances itself as an AVL tree on
+	// every add and delete, so its height stays O(log n) even when items arrive in sorted order.
+	public BinarySearchTree(boolean balanced) {
+		this.balanced = balanced;
+	}
+
+	// Returns the number of items in the tree.
+	public int size() {
+		return size;
+	}
+
+	// Creates the node for an item being added. Every add path creates exactly one node for an
+	// item that wasn't there yet, so this is where the size is counted.
+	private Node<E> newLeaf(E newItem) {
+		size++;
+		return new Node<E>(newItem, null, null);
+	}
 
 	// Returns an iterator over this BST. 
 	public Iterator<E> iterator() {
-		return new InOrderIterator();
+		return new InOrderIterator(null, null);
+	}
+
+	// Returns an in-order iterator over the items from from (inclusive) up to to (exclusive).
+	// Either bound may be null to leave that side open.
+	public Iterator<E> iterator(E from, E to) {
+		return new InOrderIterator(from, to);
+	}
+
+	// Returns the smallest item in the tree that is greater than or equal to someItem, or null
+	// if there is none.
+	public E ceiling(E someItem) {
+		Node<E> temp = root;
+		E best = null;
+		while (temp != null) {
+			int comparison = someItem.compareTo(temp.data);
+			if (comparison == 0) {
+				return temp.data;
+			} else if (comparison < 0) { // temp is a candidate, but there may be a smaller one to the left
+				best = temp.data;
+				temp = temp.left;
+			} else {
+				temp = temp.right;
+			}
+		}
+		return best;
+	}
+
+	// Returns the largest item in the tree that is less than or equal to someItem, or null if
+	// there is none.
+	public E floor(E someItem) {
+		Node<E> temp = root;
+		E best = null;
+		while (temp != null) {
+			int comparison = someItem.compareTo(temp.data);
+			if (comparison == 0) {
+				return temp.data;
+			} else if (comparison > 0) { // temp is a candidate, but there may be a larger one to the right
+				best = temp.data;
+				temp = temp.right;
+			} else {
+				temp = temp.left;
+			}
+		}
+		return best;
 	}
 
 	// Wrapper method for pre-order traversal.
@@ -102,9 +191,11 @@ public class BinarySearchTree<E extends Comparable<E>> implements Iterable<E> {
 
 	// Wrapper method for add
 	public void add(E newItem) {
-		if (root == null) // special case for adding to the root (we need to
+		if (balanced)
+			root = addBalanced(newItem, root);
+		else if (root == null) // special case for adding to the root (we need to
 							// modify the root reference)
-			root = new Node<E>(newItem, null, null);
+			root = newLeaf(newItem);
 		else
 			add(newItem, root);
 	}
@@ -114,9 +205,9 @@ public class BinarySearchTree<E extends Comparable<E>> implements Iterable<E> {
 
 		int compare = newItem.compareTo(where.data);
 		if (compare < 0 && where.left == null) // base case - add a new left child to where
-			where.left = new Node<E>(newItem, null, null);
+			where.left = newLeaf(newItem);
 		else if (compare > 0 && where.right == null) // base case - add a new right child to where
-			where.right = new Node<E>(newItem, null, null);
+			where.right = newLeaf(newItem);
 		else if (compare < 0)
 			add(newItem, where.left); // recursively add newItem to where's left subtree
 		else if (compare > 0)
@@ -128,14 +219,14 @@ public class BinarySearchTree<E extends Comparable<E>> implements Iterable<E> {
 
 	// Alternate version of add 
 	public void add2(E newItem) {
-		root = add2(newItem, root);
+		root = balanced ? addBalanced(newItem, root) : add2(newItem, root);
 	}
 
 	// Recursively adds the newItem into the tree rooted at where. Returns a
 	// reference to the root of that tree, with the newItem added.
 	private Node<E> add2(E newItem, Node<E> where) {
 		if (where == null) {
-			return new Node<E>(newItem, null, null);
+			return newLeaf(newItem);
 		} else {
 			int compare = newItem.compareTo(where.data);
 			if (compare < 0) {
@@ -174,7 +265,9 @@ public class BinarySearchTree<E extends Comparable<E>> implements Iterable<E> {
 	// Wrapper method for delete. Returns the item that was deleted if found, or
 	// null if item not found.
 	public E delete(E someItem) {
-		root = delete(someItem, root);
+		root = balanced ? deleteBalanced(someItem, root) : delete(someItem, root);
+		if (deleteReturn != null)
+			size--;
 		return deleteReturn;
 	}
 
@@ -243,8 +336,10 @@ public class BinarySearchTree<E extends Comparable<E>> implements Iterable<E> {
 	}
 
 	public void addIterative(E newItem) {
-		if (root == null) { // exception for if the tree is empty. Then you just make the the new node the root.
-			root = new Node<E>(newItem, null, null);
+		if (balanced) { // rebalancing needs the path back up, so the balanced add is recursive (O(log n) deep)
+			root = addBalanced(newItem, root);
+		} else if (root == null) { // exception for if the tree is empty. Then you just make the the new node the root.
+			root = newLeaf(newItem);
 		} else {
 			Node<E> temp = root;
 
@@ -253,10 +348,10 @@ public class BinarySearchTree<E extends Comparable<E>> implements Iterable<E> {
 				if (comparison == 0) { // 1) item is a duplicate of current node and should not be added
 					break;
 				} else if (comparison < 0 && temp.left == null) { // 2) item is less than current node and should be its new left child
-					temp.left = new Node<E>(newItem, null, null);
+					temp.left = newLeaf(newItem);
 					break;
 				} else if (comparison > 0 && temp.right == null) { // 3) item is greater than current node and should be its new right child
-					temp.right = new Node<E>(newItem, null, null);
+					temp.right = newLeaf(newItem);
 					break;
 				} else if (comparison < 0) { // 4) item is less than current node, and search continues in current node's left subtree
 					temp = temp.left;
@@ -268,6 +363,9 @@ public class BinarySearchTree<E extends Comparable<E>> implements Iterable<E> {
 	}
 
 	public E findIterative(E someItem) {
+		if (root == null) { // nothing can be found in an empty tree
+			return null;
+		}
 		Node<E> temp = root;
 
 		while (true) { // 5 cases
@@ -286,6 +384,123 @@ public class BinarySearchTree<E extends Comparable<E>> implements Iterable<E> {
 		}
 	}
 
+	// Recursively adds newItem to the AVL tree rooted at where. Returns the new root of that tree,
+	// which may change when it is rebalanced.
+	private Node<E> addBalanced(E newItem, Node<E> where) {
+		if (where == null)
+			return newLeaf(newItem);
+
+		int compare = newItem.compareTo(where.data);
+		if (compare < 0)
+			where.left = addBalanced(newItem, where.left);
+		else if (compare > 0)
+			where.right = addBalanced(newItem, where.right);
+		else
+			return where; // duplicates aren't added, so nothing changed
+		return rebalance(where);
+	}
+
+	// Recursively deletes someItem from the AVL tree rooted at where, rebalancing on the way back
+	// up. Returns the new root of that tree.
+	private Node<E> deleteBalanced(E someItem, Node<E> where) {
+		if (where == null) { // base case - empty tree
+			deleteReturn = null;
+			return null;
+		}
+
+		int compare = someItem.compareTo(where.data);
+		if (compare < 0) {
+			where.left = deleteBalanced(someItem, where.left);
+		} else if (compare > 0) {
+			where.right = deleteBalanced(someItem, where.right);
+		} else if (where.left == null || where.right == null) { // zero or one child
+			deleteReturn = where.data;
+			return where.left != null ? where.left : where.right;
+		} else { // two children - replace with the in-order predecessor, then delete that from the left
+			E deleted = where.data;
+			Node<E> iop = where.left;
+			while (iop.right != null)
+				iop = iop.right;
+			where.data = iop.data;
+			where.left = deleteBalanced(iop.data, where.left);
+			deleteReturn = deleted;
+		}
+		return rebalance(where);
+	}
+
+	private int height(Node<E> where) {
+		return where == null ? 0 : where.height;
+	}
+
+	private void updateHeight(Node<E> where) {
+		where.height = 1 + Math.max(height(where.left), height(where.right));
+	}
+
+	// Restores the AVL property at where, whose subtrees are balanced but may differ in height by
+	// two, using one or two rotations. Returns the new root of the subtree.
+	private Node<E> rebalance(Node<E> where) {
+		updateHeight(where);
+		int balance = height(where.left) - height(where.right);
+		if (balance > 1) { // left heavy
+			if (height(where.left.left) < height(where.left.right))
+				where.left = rotateLeft(where.left);
+			return rotateRight(where);
+		} else if (balance < -1) { // right heavy
+			if (height(where.right.right) < height(where.right.left))
+				where.right = rotateRight(where.right);
+			return rotateLeft(where);
+		}
+		return where;
+	}
+
+	private Node<E> rotateRight(Node<E> where) {
+		Node<E> newRoot = where.left;
+		where.left = newRoot.right;
+		newRoot.right = where;
+		updateHeight(where);
+		updateHeight(newRoot);
+		return newRoot;
+	}
+
+	private Node<E> rotateLeft(Node<E> where) {
+		Node<E> newRoot = where.right;
+		where.right = newRoot.left;
+		newRoot.left = where;
+		updateHeight(where);
+		updateHeight(newRoot);
+		return newRoot;
+	}
+
+	// Replaces the contents of the tree with the items in sorted, in O(n) time. The tree is built
+	// perfectly balanced by making the middle item the root of each subtree. Duplicates are
+	// skipped; throws an IllegalArgumentException if the items aren't in sorted order.
+	public void buildFromSorted(List<E> sorted) {
+		List<E> items = new ArrayList<>(sorted.size());
+		for (E item : sorted) {
+			if (!items.isEmpty()) {
+				int compare = item.compareTo(items.get(items.size() - 1));
+				if (compare < 0)
+					throw new IllegalArgumentException("items are not sorted: " + item);
+				else if (compare == 0)
+					continue;
+			}
+			items.add(item);
+		}
+		root = buildFromSorted(items, 0, items.size() - 1);
+		size = items.size();
+	}
+
+	// Builds a balanced tree from items[start..end] and returns its root.
+	private Node<E> buildFromSorted(List<E> items, int start, int end) {
+		if (start > end)
+			return null;
+		int middle = (start + end) >>> 1;
+		Node<E> where = new Node<E>(items.get(middle), buildFromSorted(items, start, middle - 1),
+				buildFromSorted(items, middle + 1, end));
+		updateHeight(where);
+		return where;
+	}
+
 	public static void main(String[] args) {
 		
 		//Creates and tests a BinarySearchTree
@@ -0,0 +1,434 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Caches the results of closeMatches and autocomplete in front of another SpellChecker. Real
+// traffic asks for the same few typos and short prefixes over and over, and those are the most
+// expensive calls, so a small cache answers most of them.
+// The cache is split into segments, each an LRU map under its own lock, so threads working on
+// different keys rarely wait for each other. The total size is limited to a number of bytes
+// (estimated from the lengths of the cached strings). When a segment is full, a new result only
+// gets in if it has been asked for more often than the entries it would push out, as in TinyLFU:
+// every segment keeps a small count-min sketch of how often each key has been requested lately,
+// so a burst of one-off queries can't flush out the entries that are asked for all the time.
+// Adding a word drops only the cached results it changes: autocomplete results for prefixes of
+// the word, and closeMatches results for queries within one edit of it.
+// The cache itself is thread safe; whether add can run alongside queries is up to the wrapped
+// checker (TrieSpellChecker can't, so load it first).
+
+public class CachingSpellChecker implements SpellChecker {
+
+	private static final int SEGMENTS = 16; // a power of two
+	private static final int ESTIMATED_ENTRY_BYTES = 512; // for sizing the sketches
+
+	private final SpellChecker checker;
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	// Bumped by every add that may have changed a result, so a result computed while an add was
+	// going on is returned but not cached.
+	private final AtomicLong generation = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder rejections = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+
+	// Caches results from checker in at most maxBytes (estimated) of memory.
+	public CachingSpellChecker(SpellChecker checker, long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+		}
+		this.checker = checker;
+		long segmentBytes = maxBytes / SEGMENTS;
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(segmentBytes);
+		}
+	}
+
+	// A cached query: the kind of call and its argument.
+	private static final class Key {
+		private final boolean autocomplete; // false for closeMatches
+		private final String query;
+		private final int hash;
+
+		public Key(boolean autocomplete, String query) {
+			this.autocomplete = autocomplete;
+			this.query = query;
+			this.hash = query.hashCode() * 31 + (autocomplete ? 1 : 0);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return autocomplete == other.autocomplete && query.equals(other.query);
+		}
+	}
+
+	private static final class Entry {
+		private final Set<String> value;
+		private final long bytes;
+
+		public Entry(Set<String> value, long bytes) {
+			this.value = value;
+			this.bytes = bytes;
+		}
+	}
+
+	// One part of the cache: an LRU map, the bytes it holds, and the frequency sketch used to
+	// decide what gets in. Everything is guarded by the segment's lock.
+	private final class Segment {
+		private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+		private final FrequencySketch sketch;
+		private final long maxBytes;
+		private long bytes;
+
+		public Segment(long maxBytes) {
+			this.maxBytes = maxBytes;
+			sketch = new FrequencySketch((int) Math.min(1 << 24, Math.max(64, maxBytes / ESTIMATED_ENTRY_BYTES)));
+		}
+
+		// Adds entry under key if there is room, pushing out least recently used entries to make
+		// room, but only if key is requested more often than every entry it would push out.
+		private void admit(Key key, Entry entry) {
+			if (entry.bytes > maxBytes) {
+				rejections.increment();
+				return;
+			}
+			if (entries.containsKey(key)) {
+				return; // another thread got there first
+			}
+			long needed = bytes + entry.bytes - maxBytes;
+			if (needed > 0) {
+				int frequency = sketch.frequency(key.hash);
+				int victims = 0;
+				long freed = 0;
+				for (Map.Entry<Key, Entry> victim : entries.entrySet()) { // least recently used first
+					if (freed >= needed) {
+						break;
+					}
+					if (sketch.frequency(victim.getKey().hash) >= frequency) {
+						rejections.increment();
+						return;
+					}
+					freed += victim.getValue().bytes;
+					victims++;
+				}
+				Iterator<Entry> eldest = entries.values().iterator();
+				for (int i = 0; i < victims; i++) {
+					bytes -= eldest.next().bytes;
+					eldest.remove();
+				}
+				evictions.add(victims);
+			}
+			entries.put(key, entry);
+			bytes += entry.bytes;
+		}
+
+		private void remove(Key key) {
+			Entry removed = entries.remove(key);
+			if (removed != null) {
+				bytes -= removed.bytes;
+				invalidations.increment();
+			}
+		}
+	}
+
+	// A count-min sketch of 4-bit counters, four per key, packed sixteen to a long. A key's
+	// frequency is the smallest of its four counters, which can only overestimate. Once enough
+	// increments have been made every counter is halved, so the counts favour recent requests.
+	private static final class FrequencySketch {
+		private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+				0xcbf29ce484222325L };
+
+		private final long[] table;
+		private final int counterMask;
+		private final int sampleSize;
+		private int additions;
+
+		public FrequencySketch(int expectedEntries) {
+			int counters = Integer.highestOneBit(Math.max(16, expectedEntries) * 2 - 1) * 4;
+			table = new long[counters / 16];
+			counterMask = counters - 1;
+			sampleSize = 10 * expectedEntries;
+		}
+
+		private int index(int hash, int i) {
+			long h = (hash + SEEDS[i]) * SEEDS[i];
+			h ^= h >>> 32;
+			return (int) h & counterMask;
+		}
+
+		public int frequency(int hash) {
+			int frequency = 15;
+			for (int i = 0; i < 4; i++) {
+				int index = index(hash, i);
+				frequency = Math.min(frequency, (int) (table[index >>> 4] >>> ((index & 15) << 2)) & 15);
+			}
+			return frequency;
+		}
+
+		public void increment(int hash) {
+			boolean added = false;
+			for (int i = 0; i < 4; i++) {
+				int index = index(hash, i);
+				int shift = (index & 15) << 2;
+				if (((table[index >>> 4] >>> shift) & 15) < 15) {
+					table[index >>> 4] += 1L << shift;
+					added = true;
+				}
+			}
+			if (added && ++additions == sampleSize) {
+				for (int i = 0; i < table.length; i++) {
+					table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+				}
+				additions /= 2;
+			}
+		}
+	}
+
+	private Segment segmentFor(Key key) {
+		int h = key.hash ^ (key.hash >>> 16);
+		return segments[(h * 0x9e3779b9 >>> 28) & (SEGMENTS - 1)];
+	}
+
+	// Returns the cached result for key, or computes, caches and returns it.
+	private Set<String> cached(Key key, Function<String, Set<String>> compute) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.sketch.increment(key.hash);
+			Entry entry = segment.entries.get(key);
+			if (entry != null) {
+				hits.increment();
+				return entry.value;
+			}
+		}
+		misses.increment();
+		long before = generation.get();
+		Set<String> value = Collections.unmodifiableSet(compute.apply(key.query));
+		Entry entry = new Entry(value, weigh(key, value));
+		synchronized (segment) {
+			if (generation.get() == before) {
+				segment.admit(key, entry);
+			}
+		}
+		return value;
+	}
+
+	// Estimates the memory an entry holds on to: the key, its map entry, and each result
+	// string along with its slot in the result set.
+	private static long weigh(Key key, Set<String> value) {
+		long bytes = 120 + 2L * key.query.length();
+		for (String word : value) {
+			bytes += 80 + 2L * word.length();
+		}
+		return bytes;
+	}
+
+	// Adds s, then drops the cached results that s changes. Nothing is dropped if s was
+	// already a word.
+	@Override
+	public void add(String s) {
+		boolean isNew = !checker.contains(s);
+		checker.add(s);
+		if (!isNew) {
+			return;
+		}
+		generation.incrementAndGet();
+
+		// s is a new completion of each of its prefixes.
+		for (int i = 0; i <= s.length(); i++) {
+			Key key = new Key(true, s.substring(0, i));
+			Segment segment = segmentFor(key);
+			synchronized (segment) {
+				segment.remove(key);
+			}
+		}
+		// s is a new close match of every query within one edit of it. Those can't be looked
+		// up directly, so the closeMatches entries are scanned; adds are expected to be rare.
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				Iterator<Map.Entry<Key, Entry>> entries = segment.entries.entrySet().iterator();
+				while (entries.hasNext()) {
+					Map.Entry<Key, Entry> entry = entries.next();
+					Key key = entry.getKey();
+					if (!key.autocomplete && withinOneEdit(key.query, s)) {
+						segment.bytes -= entry.getValue().bytes;
+						entries.remove();
+						invalidations.increment();
+					}
+				}
+			}
+		}
+	}
+
+	// Returns whether a can be made into b with at most one insertion, deletion or replacement.
+	static boolean withinOneEdit(String a, String b) {
+		if (a.length() > b.length()) {
+			String swap = a;
+			a = b;
+			b = swap;
+		}
+		if (b.length() - a.length() > 1) {
+			return false;
+		}
+		int start = 0;
+		while (start < a.length() && a.charAt(start) == b.charAt(start)) {
+			start++;
+		}
+		// Skip the one difference in b (and in a too if they are the same length), then the
+		// rest has to match.
+		int i = a.length() == b.length() ? start + 1 : start;
+		return a.regionMatches(i, b, start + 1, a.length() - i);
+	}
+
+	@Override
+	public boolean contains(String s) {
+		return checker.contains(s);
+	}
+
+	// The returned sets are shared with the cache, so they can't be modified.
+	@Override
+	public Set<String> autocomplete(String s) {
+		return cached(new Key(true, s), checker::autocomplete);
+	}
+
+	@Override
+	public Set<String> closeMatches(String s) {
+		return cached(new Key(false, s), checker::closeMatches);
+	}
+
+	@Override
+	public int size() {
+		return checker.size();
+	}
+
+	@Override
+	public void setMetrics(SpellCheckerMetrics metrics) {
+		checker.setMetrics(metrics);
+	}
+
+	public long hits() {
+		return hits.sum();
+	}
+
+	public long misses() {
+		return misses.sum();
+	}
+
+	// Returns the fraction of closeMatches and autocomplete calls answered from the cache.
+	public double hitRate() {
+		long hit = hits.sum();
+		long total = hit + misses.sum();
+		return total == 0 ? 0 : (double) hit / total;
+	}
+
+	// Returns the number of results that weren't cached because they were too big or asked for
+	// less often than what they would have replaced.
+	public long rejections() {
+		return rejections.sum();
+	}
+
+	public long evictions() {
+		return evictions.sum();
+	}
+
+	// Returns the number of entries dropped because an add changed them.
+	public long invalidations() {
+		return invalidations.sum();
+	}
+
+	// Returns the estimated bytes held by the cache.
+	public long bytesUsed() {
+		long total = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				total += segment.bytes;
+			}
+		}
+		return total;
+	}
+
+	public String stats() {
+		return String.format("hit rate %.3f (%d hits, %d misses), %d rejected, %d evicted, %d invalidated, %d KB used",
+				hitRate(), hits(), misses(), rejections(), evictions(), invalidations(), bytesUsed() / 1024);
+	}
+
+	// Makes count queries from the typos, picking typo r with probability proportional
+	// to 1/(r+1), so a few typos make up most of the traffic.
+	private static String[] zipfTraffic(String[] typos, int count, Random random) {
+		double[] cumulative = new double[typos.length];
+		double total = 0;
+		for (int r = 0; r < typos.length; r++) {
+			total += 1.0 / (r + 1);
+			cumulative[r] = total;
+		}
+		String[] queries = new String[count];
+		for (int i = 0; i < count; i++) {
+			int r = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+			queries[i] = typos[r < 0 ? Math.min(-r - 1, typos.length - 1) : r];
+		}
+		return queries;
+	}
+
+	// Runs the queries through closeMatches, returning the time taken in seconds.
+	private static double time(SpellChecker checker, String[] queries) {
+		long start = System.nanoTime();
+		long found = 0;
+		for (String query : queries) {
+			found += checker.closeMatches(query).size();
+		}
+		if (found < 0) { // keeps the work from being optimized away
+			System.out.println(found);
+		}
+		return (System.nanoTime() - start) / 1000000000.0;
+	}
+
+	// main method compares closeMatches throughput with and without the cache on heavy-tailed
+	// typo traffic, then shows an add invalidating the results it changes
+	public static void main(String[] args) throws Exception {
+		String file = args.length > 0 ? args[0] : "wordlist_English.txt";
+		TrieSpellChecker trie = new TrieSpellChecker();
+		trie.addFile(file);
+
+		// Typos made by replacing one letter of a random word.
+		Random random = new Random(42);
+		List<String> words = WordReader.readAll(file);
+		String[] typos = new String[20000];
+		for (int i = 0; i < typos.length; i++) {
+			char[] word = words.get(random.nextInt(words.size())).toCharArray();
+			word[random.nextInt(word.length)] = (char) ('a' + random.nextInt(26));
+			typos[i] = new String(word);
+		}
+		String[] queries = zipfTraffic(typos, 200000, random);
+
+		CachingSpellChecker cache = new CachingSpellChecker(trie, 8L * 1024 * 1024);
+		time(trie, Arrays.copyOf(queries, 20000)); // warmup
+		double uncached = time(trie, queries);
+		double cached = time(cache, queries);
+		System.out.printf("uncached: %.0f queries/s, cached: %.0f queries/s%n", queries.length / uncached,
+				queries.length / cached);
+		System.out.println(cache.stats());
+
+		System.out.println(cache.closeMatches("zorp") + " " + cache.autocomplete("zor").size());
+		cache.add("zorps");
+		System.out.println(cache.closeMatches("zorp") + " " + cache.autocomplete("zor").size());
+		System.out.println(cache.stats());
+	}
+}
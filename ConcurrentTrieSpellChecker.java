@@ -0,0 +1,294 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+// Implements a SpellChecker/Dictionary using a trie that can be shared between threads, with
+// words being added while others are looking them up.
+// Readers never take a lock. A node's children are kept in an immutable Children object, and a
+// writer that adds a child builds a new copy and publishes it with a single volatile write, so a
+// reader sees either the old children or the new ones, never a half-updated node. Writers are
+// serialized per subtree: adds of words with the same first letter lock that letter's node,
+// while new first letters are published into the root with compare-and-set.
+
+public class ConcurrentTrieSpellChecker {
+
+	private static final AtomicReferenceFieldUpdater<Node, Children> CHILDREN =
+			AtomicReferenceFieldUpdater.newUpdater(Node.class, Children.class, "children");
+
+	// The children of a node: sorted characters and the nodes they lead to. Never changed once
+	// it is published.
+	private static class Children {
+		private static final Children EMPTY = new Children(new char[0], new Node[0]);
+
+		private final char[] keys;
+		private final Node[] kids;
+
+		public Children(char[] keys, Node[] kids) {
+			this.keys = keys;
+			this.kids = kids;
+		}
+
+		public Node get(char c) {
+			int index = Arrays.binarySearch(keys, c);
+			return index >= 0 ? kids[index] : null;
+		}
+
+		// Returns a copy with child added under c, which must not be present yet.
+		public Children with(char c, Node child) {
+			int position = -Arrays.binarySearch(keys, c) - 1;
+			char[] newKeys = new char[keys.length + 1];
+			Node[] newKids = new Node[kids.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, position);
+			System.arraycopy(kids, 0, newKids, 0, position);
+			newKeys[position] = c;
+			newKids[position] = child;
+			System.arraycopy(keys, position, newKeys, position + 1, keys.length - position);
+			System.arraycopy(kids, position, newKids, position + 1, kids.length - position);
+			return new Children(newKeys, newKids);
+		}
+	}
+
+	private static class Node {
+		private volatile Children children = Children.EMPTY;
+		private volatile boolean isShaded;
+	}
+
+	private final Node root = new Node();
+	private final AtomicLong size = new AtomicLong();
+
+	// Adds s to the trie. Can be called from any number of threads at once.
+	public void add(String s) {
+		if (s.isEmpty()) {
+			synchronized (root) {
+				shade(root);
+			}
+			return;
+		}
+
+		// The first level is shared by every writer, so new nodes are published there with CAS.
+		char first = s.charAt(0);
+		Node subtree;
+		while (true) {
+			Children current = root.children;
+			subtree = current.get(first);
+			if (subtree != null) {
+				break;
+			}
+			Node created = new Node();
+			if (CHILDREN.compareAndSet(root, current, current.with(first, created))) {
+				subtree = created;
+				break;
+			}
+		}
+
+		// Below that, only one writer at a time works in each subtree.
+		synchronized (subtree) {
+			Node temp = subtree;
+			for (int i = 1; i < s.length(); i++) {
+				Node next = temp.children.get(s.charAt(i));
+				if (next == null) {
+					next = new Node();
+					temp.children = temp.children.with(s.charAt(i), next);
+				}
+				temp = next;
+			}
+			shade(temp);
+		}
+	}
+
+	// Shades node, counting the word if it is new. Must be called while holding the subtree's lock.
+	private void shade(Node node) {
+		if (!node.isShaded) {
+			node.isShaded = true;
+			size.incrementAndGet();
+		}
+	}
+
+	// Reads in Strings from text file and adds them to the trie. Returns the number of words read.
+	public long addFile(String filename) throws FileNotFoundException {
+		long count = 0;
+		try (WordReader reader = new WordReader(filename)) {
+			String word;
+			while ((word = reader.next()) != null) {
+				add(word);
+				count++;
+			}
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return count;
+	}
+
+	private Node walk(String s) {
+		Node temp = root;
+		for (int i = 0; i < s.length() && temp != null; i++) {
+			temp = temp.children.get(s.charAt(i));
+		}
+		return temp;
+	}
+
+	// Returns whether s is in the trie. Never blocks, even while words are being added.
+	public boolean contains(String s) {
+		Node temp = walk(s);
+		return temp != null && temp.isShaded;
+	}
+
+	// Returns all of the words starting with s. Words added while this runs may or may not be included.
+	public Set<String> autocomplete(String s) {
+		Set<String> result = new HashSet<>();
+		Node temp = walk(s);
+		if (temp != null) {
+			collect(result, new StringBuilder(s), temp);
+		}
+		return result;
+	}
+
+	private void collect(Set<String> result, StringBuilder buffer, Node node) {
+		if (node.isShaded) {
+			result.add(buffer.toString());
+		}
+		Children children = node.children; // read once so the keys and nodes match
+		for (int i = 0; i < children.keys.length; i++) {
+			buffer.append(children.keys[i]);
+			collect(result, buffer, children.kids[i]);
+			buffer.setLength(buffer.length() - 1);
+		}
+	}
+
+	// Returns the number of words in the trie.
+	public long size() {
+		return size.get();
+	}
+
+	// Stress test: writers add the word list in interleaved slices while readers keep checking
+	// that every word a writer has finished adding is visible. Returns the number of failures.
+	private static long stressTest(List<String> words, int writers, int readers) throws InterruptedException {
+		ConcurrentTrieSpellChecker trie = new ConcurrentTrieSpellChecker();
+		AtomicInteger[] progress = new AtomicInteger[writers]; // words finished by each writer
+		AtomicBoolean done = new AtomicBoolean();
+		LongAdder failures = new LongAdder();
+		List<Thread> threads = new ArrayList<>();
+
+		for (int w = 0; w < writers; w++) {
+			int writer = w;
+			progress[w] = new AtomicInteger();
+			threads.add(new Thread(() -> {
+				for (int i = writer; i < words.size(); i += writers) {
+					trie.add(words.get(i));
+					progress[writer].incrementAndGet();
+				}
+			}));
+		}
+		for (int r = 0; r < readers; r++) {
+			threads.add(new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				while (!done.get()) {
+					int writer = random.nextInt(writers);
+					int finished = progress[writer].get();
+					if (finished > 0) {
+						String word = words.get(writer + writers * random.nextInt(finished));
+						if (!trie.contains(word)) {
+							failures.increment();
+						}
+						trie.autocomplete(word);
+					}
+				}
+			}));
+		}
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (int w = 0; w < writers; w++) {
+			threads.get(w).join();
+		}
+		done.set(true);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		for (String word : words) {
+			if (!trie.contains(word)) {
+				failures.increment();
+			}
+		}
+		if (trie.size() != new HashSet<>(words).size()) {
+			failures.increment();
+		}
+		return failures.sum();
+	}
+
+	// Runs contains from the given number of threads for a while, with one thread adding words
+	// the whole time, and returns the lookups per second.
+	private static double readThroughput(ConcurrentTrieSpellChecker trie, List<String> words, int threads)
+			throws InterruptedException {
+		AtomicBoolean done = new AtomicBoolean();
+		LongAdder lookups = new LongAdder();
+		CountDownLatch started = new CountDownLatch(threads);
+		List<Thread> readers = new ArrayList<>();
+
+		Thread writer = new Thread(() -> {
+			int i = 0;
+			while (!done.get()) {
+				trie.add(words.get(i++ % words.size()) + "x");
+			}
+		});
+		for (int t = 0; t < threads; t++) {
+			readers.add(new Thread(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				long count = 0;
+				started.countDown();
+				while (!done.get()) {
+					trie.contains(words.get(random.nextInt(words.size())));
+					count++;
+				}
+				lookups.add(count);
+			}));
+		}
+
+		writer.start();
+		for (Thread reader : readers) {
+			reader.start();
+		}
+		started.await();
+		long start = System.nanoTime();
+		Thread.sleep(2000);
+		done.set(true);
+		long finish = System.nanoTime();
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		writer.join();
+		return lookups.sum() / ((finish - start) / 1000000000.0);
+	}
+
+	// main method runs the stress test and then measures how lookups scale with the number of threads
+	public static void main(String[] args) throws Exception {
+		String file = args.length > 0 ? args[0] : "wordlist_English.txt";
+		List<String> words = WordReader.readAll(file);
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		System.out.println("stress test failures: " + stressTest(words, 4, Math.max(4, cores)));
+
+		ConcurrentTrieSpellChecker trie = new ConcurrentTrieSpellChecker();
+		trie.addFile(file);
+		for (int threads = 1; threads <= 2 * cores; threads *= 2) {
+			System.out.printf("%d reader threads: %.0f lookups per second%n", threads,
+					readThroughput(trie, words, threads));
+		}
+	}
+}
@@ -0,0 +1,598 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Keeps a TrieSpellChecker on disk so words added or removed at runtime survive a restart.
+// Every change is appended to a write-ahead log before add or remove returns. Changes are
+// forced to disk by a single writer thread, which takes everything queued up while the
+// previous force was running and forces it together, so many threads adding at once share the
+// cost of each fsync (group commit). Every so often the whole dictionary is written out as a
+// snapshot and the log starts over, so a restart reads the snapshot in one sequential pass and
+// then only replays the changes made since it, however long the store has been running.
+//
+// The directory holds snapshot-<n>.dat, which has every word from the logs before log n, and
+// wal-<n>.log files. Recovery loads the newest snapshot and replays the logs from its number
+// on. A log that ends in a half-written record (from a crash during a write) is cut back to
+// the last complete record.
+//
+// Log record: int length of what follows up to the checksum, byte ADD or REMOVE, the word in
+// UTF-8, then an int CRC32 of the operation and the word.
+// Snapshot: int MAGIC, int VERSION, long number, int word count, each word as an int length
+// and its UTF-8 bytes, then an int CRC32 of everything before it.
+//
+// Changes go through the store; the dictionary itself is not thread safe, so reads from
+// dictionary() shouldn't overlap with add and remove.
+
+public class DictionaryStore implements Closeable {
+
+	static final int MAGIC = 0x54534e50;
+	static final int VERSION = 1;
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+	private static final int MAX_RECORD = 1 << 20; // longer length fields can only be garbage
+	private static final long DEFAULT_SNAPSHOT_EVERY = 100000;
+
+	private final Path directory;
+	private final TrieSpellChecker dictionary = new TrieSpellChecker();
+	private final long snapshotEvery;
+	private final Object lock = new Object();
+	private final Object snapshotLock = new Object(); // one snapshot at a time
+	private final Thread writer;
+	private final long recoveredChanges;
+
+	// Guarded by lock.
+	private FileChannel log;
+	private long generation; // number of the current log
+	private ByteBuffer pending = ByteBuffer.allocate(64 * 1024); // records waiting for the writer
+	private ByteBuffer writing = ByteBuffer.allocate(64 * 1024); // records the writer is forcing
+	private long appended; // sequence number of the last record queued
+	private long durable; // sequence number of the last record forced to disk
+	private long changesSinceSnapshot;
+	private long syncs;
+	private IOException failure; // set if the log can't be written any more
+	private IOException snapshotFailure; // set if a background snapshot failed
+	private boolean compacting;
+	private boolean closed;
+
+	private DictionaryStore(Path directory, long snapshotEvery) throws IOException {
+		this.directory = directory;
+		this.snapshotEvery = snapshotEvery;
+		Files.createDirectories(directory);
+
+		long snapshot = latest(generations("snapshot-", ".dat"));
+		if (snapshot >= 0) {
+			loadSnapshot(snapshotPath(snapshot));
+		} else {
+			snapshot = 0;
+		}
+		List<Long> logs = generations("wal-", ".log");
+		long replayed = 0;
+		generation = snapshot;
+		for (int i = 0; i < logs.size(); i++) {
+			if (logs.get(i) >= snapshot) {
+				replayed += replay(logPath(logs.get(i)), i == logs.size() - 1);
+				generation = logs.get(i);
+			}
+		}
+		recoveredChanges = replayed;
+		changesSinceSnapshot = replayed;
+		log = openLog(generation);
+
+		writer = new Thread(this::writeLoop, "DictionaryStore writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	// Opens the store in directory, creating it if needed, and recovers the dictionary.
+	public static DictionaryStore open(Path directory) throws IOException {
+		return new DictionaryStore(directory, DEFAULT_SNAPSHOT_EVERY);
+	}
+
+	// Like open(directory), taking a new snapshot in the background after every snapshotEvery
+	// changes.
+	public static DictionaryStore open(Path directory, long snapshotEvery) throws IOException {
+		if (snapshotEvery <= 0) {
+			throw new IllegalArgumentException("snapshotEvery must be positive: " + snapshotEvery);
+		}
+		return new DictionaryStore(directory, snapshotEvery);
+	}
+
+	// The recovered dictionary, kept up to date by add and remove.
+	public TrieSpellChecker dictionary() {
+		return dictionary;
+	}
+
+	// Returns the number of changes replayed from the logs when the store was opened.
+	public long recoveredChanges() {
+		return recoveredChanges;
+	}
+
+	// Returns the number of times the log has been forced to disk.
+	public long syncs() {
+		synchronized (lock) {
+			return syncs;
+		}
+	}
+
+	// Adds s and returns once the change is on disk. Returns false, without logging anything,
+	// if s was already a word.
+	public boolean add(String s) throws IOException {
+		return addAll(Collections.singleton(s)) > 0;
+	}
+
+	// Adds every word and returns once all of them are on disk, which takes a single fsync.
+	// Returns the number of words that weren't there before.
+	public long addAll(Collection<String> words) throws IOException {
+		long added = 0;
+		long sequence;
+		synchronized (lock) {
+			checkWritable();
+			for (String word : words) {
+				if (!dictionary.contains(word)) {
+					dictionary.add(word);
+					queue(ADD, word);
+					added++;
+				}
+			}
+			sequence = appended;
+		}
+		awaitDurable(sequence);
+		return added;
+	}
+
+	// Removes s and returns once the change is on disk. Returns false, without logging
+	// anything, if s wasn't a word.
+	public boolean remove(String s) throws IOException {
+		long sequence;
+		synchronized (lock) {
+			checkWritable();
+			if (!dictionary.remove(s)) {
+				return false;
+			}
+			queue(REMOVE, s);
+			sequence = appended;
+		}
+		awaitDurable(sequence);
+		return true;
+	}
+
+	private void checkWritable() throws IOException {
+		if (closed) {
+			throw new IllegalStateException("the store is closed");
+		}
+		if (failure != null) {
+			throw new IOException("the log can't be written", failure);
+		}
+	}
+
+	// Encodes a record onto the pending buffer for the writer. Must hold lock.
+	private void queue(byte operation, String word) {
+		byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+		if (pending.remaining() < bytes.length + 9) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes.length + 9));
+			pending.flip();
+			larger.put(pending);
+			pending = larger;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(operation);
+		crc.update(bytes);
+		pending.putInt(bytes.length + 1).put(operation).put(bytes).putInt((int) crc.getValue());
+		appended++;
+		changesSinceSnapshot++;
+		lock.notifyAll();
+	}
+
+	// Waits for the writer to force record sequence to disk, then starts a background snapshot
+	// if enough changes have built up.
+	private void awaitDurable(long sequence) throws IOException {
+		synchronized (lock) {
+			try {
+				while (durable < sequence && failure == null) {
+					lock.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted waiting for the log");
+			}
+			if (durable < sequence) {
+				throw new IOException("the log can't be written", failure);
+			}
+			if (changesSinceSnapshot >= snapshotEvery && !compacting && !closed) {
+				compacting = true;
+				Thread compactor = new Thread(this::backgroundSnapshot, "DictionaryStore snapshot");
+				compactor.setDaemon(true);
+				compactor.start();
+			}
+		}
+	}
+
+	// The writer thread: takes everything queued so far, writes it with one write and one force,
+	// and wakes up the threads waiting for it. Stops once the store is closed and drained.
+	private void writeLoop() {
+		while (true) {
+			long batchEnd;
+			FileChannel channel;
+			synchronized (lock) {
+				while (pending.position() == 0 && !closed) {
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (pending.position() == 0) {
+					return;
+				}
+				ByteBuffer swap = writing;
+				writing = pending;
+				pending = swap;
+				batchEnd = appended;
+				channel = log;
+			}
+			try {
+				writing.flip();
+				while (writing.hasRemaining()) {
+					channel.write(writing);
+				}
+				channel.force(false);
+				writing.clear();
+				synchronized (lock) {
+					durable = batchEnd;
+					syncs++;
+					lock.notifyAll();
+				}
+			} catch (IOException e) {
+				synchronized (lock) {
+					failure = e;
+					lock.notifyAll();
+				}
+				return;
+			}
+		}
+	}
+
+	private void backgroundSnapshot() {
+		try {
+			snapshot();
+		} catch (IOException e) {
+			synchronized (lock) {
+				snapshotFailure = e;
+			}
+		} catch (IllegalStateException e) {
+			// the store was closed first, so there is nothing to compact
+		} finally {
+			synchronized (lock) {
+				compacting = false;
+			}
+		}
+	}
+
+	// Writes the whole dictionary to a new snapshot and deletes the logs and snapshots it
+	// replaces. The words are copied while changes are held off, and written out afterwards.
+	public void snapshot() throws IOException {
+		synchronized (snapshotLock) {
+			List<String> words = new ArrayList<>();
+			long number;
+			synchronized (lock) {
+				checkWritable();
+				// Let the writer finish with the current log, then start the next one.
+				try {
+					while (durable < appended && failure == null) {
+						lock.wait();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("interrupted waiting for the log");
+				}
+				checkWritable();
+				log.close();
+				generation++;
+				log = openLog(generation);
+				number = generation;
+				changesSinceSnapshot = 0;
+				dictionary.completions("").forEachRemaining(words::add);
+			}
+
+			Path temporary = directory.resolve("snapshot-" + number + ".tmp");
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				OutputStream stream = Channels.newOutputStream(channel);
+				CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream, 1 << 16), new CRC32());
+				DataOutputStream out = new DataOutputStream(checked);
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(number);
+				out.writeInt(words.size());
+				for (String word : words) {
+					byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+				out.flush();
+				out.writeInt((int) checked.getChecksum().getValue());
+				out.flush();
+				channel.force(true);
+			}
+			Files.move(temporary, snapshotPath(number), StandardCopyOption.ATOMIC_MOVE);
+			syncDirectory();
+
+			// Everything before this snapshot is in it now.
+			for (long old : generations("wal-", ".log")) {
+				if (old < number) {
+					Files.deleteIfExists(logPath(old));
+				}
+			}
+			for (long old : generations("snapshot-", ".dat")) {
+				if (old < number) {
+					Files.deleteIfExists(snapshotPath(old));
+				}
+			}
+		}
+	}
+
+	// Waits for every change to reach the disk and stops the writer. Throws if the log or a
+	// background snapshot failed.
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			lock.notifyAll();
+		}
+		try {
+			writer.join();
+			synchronized (snapshotLock) { // let a background snapshot finish
+				synchronized (lock) {
+					log.close();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted closing the store");
+		}
+		synchronized (lock) {
+			if (failure != null) {
+				throw new IOException("the log can't be written", failure);
+			}
+			if (snapshotFailure != null) {
+				throw new IOException("a snapshot failed", snapshotFailure);
+			}
+		}
+	}
+
+	private Path snapshotPath(long number) {
+		return directory.resolve("snapshot-" + number + ".dat");
+	}
+
+	private Path logPath(long number) {
+		return directory.resolve("wal-" + number + ".log");
+	}
+
+	private FileChannel openLog(long number) throws IOException {
+		FileChannel channel = FileChannel.open(logPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		channel.position(channel.size());
+		syncDirectory();
+		return channel;
+	}
+
+	// Forces the directory itself, so newly created and renamed files survive a crash. Not every
+	// platform allows opening a directory, and there it is skipped.
+	private void syncDirectory() {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// not supported here
+		}
+	}
+
+	// Returns the numbers of the files named prefix<n>suffix in the directory, in increasing order.
+	private List<Long> generations(String prefix, String suffix) throws IOException {
+		List<Long> numbers = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				try {
+					numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+				} catch (NumberFormatException e) {
+					// not one of ours
+				}
+			}
+		}
+		Collections.sort(numbers);
+		return numbers;
+	}
+
+	private static long latest(List<Long> numbers) {
+		return numbers.isEmpty() ? -1 : numbers.get(numbers.size() - 1);
+	}
+
+	private void loadSnapshot(Path path) throws IOException {
+		CRC32 crc = new CRC32();
+		try (DataInputStream in = new DataInputStream(
+				new CheckedInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16), crc))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(path + " is not a dictionary snapshot");
+			}
+			in.readLong();
+			int count = in.readInt();
+			byte[] bytes = new byte[64];
+			for (int i = 0; i < count; i++) {
+				int length = in.readInt();
+				if (length < 0 || length > MAX_RECORD) {
+					throw new IOException(path + " is corrupt");
+				}
+				if (length > bytes.length) {
+					bytes = new byte[length];
+				}
+				in.readFully(bytes, 0, length);
+				dictionary.add(new String(bytes, 0, length, StandardCharsets.UTF_8));
+			}
+			int expected = (int) crc.getValue();
+			if (in.readInt() != expected) {
+				throw new IOException(path + " is corrupt");
+			}
+		} catch (EOFException e) {
+			throw new IOException(path + " is truncated", e);
+		}
+	}
+
+	// Applies the records in a log to the dictionary, returning how many there were. If the
+	// last log ends in an incomplete or damaged record, it is cut off there; anywhere else that
+	// means the log is corrupt.
+	private long replay(Path path, boolean last) throws IOException {
+		long records = 0;
+		long good = 0; // offset just past the last good record
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+			byte[] bytes = new byte[64];
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch (EOFException e) {
+					return records; // clean end
+				}
+				if (length < 1 || length > MAX_RECORD) {
+					break;
+				}
+				if (length > bytes.length) {
+					bytes = new byte[length];
+				}
+				int checksum;
+				try {
+					in.readFully(bytes, 0, length);
+					checksum = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				CRC32 crc = new CRC32();
+				crc.update(bytes, 0, length);
+				if ((int) crc.getValue() != checksum) {
+					break;
+				}
+				String word = new String(bytes, 1, length - 1, StandardCharsets.UTF_8);
+				if (bytes[0] == ADD) {
+					dictionary.add(word);
+				} else if (bytes[0] == REMOVE) {
+					dictionary.remove(word);
+				} else {
+					break;
+				}
+				records++;
+				good += 4 + length + 4;
+			}
+		}
+		if (!last) {
+			throw new IOException(path + " is corrupt at offset " + good);
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(good);
+			channel.force(true);
+		}
+		return records;
+	}
+
+	// Deletes the files in a demo directory, so main starts from scratch.
+	private static void clear(Path directory) throws IOException {
+		if (Files.isDirectory(directory)) {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+				for (Path file : files) {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+	// Times opening the store, which is the recovery time.
+	private static DictionaryStore timedOpen(Path directory) throws IOException {
+		long start = System.nanoTime();
+		DictionaryStore store = open(directory);
+		System.out.printf("recovered %d words, replaying %d changes, in %.1f ms%n", store.dictionary().size(),
+				store.recoveredChanges(), (System.nanoTime() - start) / 1000000.0);
+		return store;
+	}
+
+	// main method loads a word list into a fresh store, makes changes from many threads at once,
+	// and shows that recovery only replays the changes made since the last snapshot
+	// Usage: java DictionaryStore [word list] [store directory]
+	public static void main(String[] args) throws Exception {
+		String file = args.length > 0 ? args[0] : "wordlist_English.txt";
+		Path directory = Paths.get(args.length > 1 ? args[1] : "dictionary-store");
+		clear(directory);
+
+		DictionaryStore store = open(directory);
+		store.addAll(WordReader.readAll(file));
+		store.snapshot();
+
+		// 8 threads adding and removing their own words, one change at a time.
+		int threads = 8, perThread = 500;
+		List<Thread> workers = new ArrayList<>();
+		long syncsBefore = store.syncs();
+		long start = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			String prefix = "zz" + t + "w";
+			Thread worker = new Thread(() -> {
+				try {
+					for (int i = 0; i < perThread; i++) {
+						store.add(prefix + i);
+					}
+					for (int i = 0; i < perThread; i += 2) {
+						store.remove(prefix + i);
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		double seconds = (System.nanoTime() - start) / 1000000000.0;
+		long changes = threads * (perThread + perThread / 2);
+		System.out.printf("%d durable changes in %.2f s (%.0f/s) with %d fsyncs%n", changes, seconds, changes / seconds,
+				store.syncs() - syncsBefore);
+		int size = store.dictionary().size();
+		store.close();
+
+		DictionaryStore reopened = timedOpen(directory);
+		System.out.println("same size after restart: " + (reopened.dictionary().size() == size));
+		System.out.println(reopened.dictionary().contains("zz3w7") + " " + reopened.dictionary().contains("zz3w8"));
+		reopened.snapshot();
+		reopened.close();
+		timedOpen(directory).close();
+
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path left : files) {
+				System.out.println("  " + left.getFileName());
+			}
+		}
+	}
+}
@@ -0,0 +1,327 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Spell-checks whole documents against a TrieSpellChecker. Text is tokenized as it is read, so
+// a document is never held in memory, and each misspelled word comes out with its line and
+// column along with suggestions from closeMatches. checkAll runs many documents at once, each
+// on its own virtual thread where the JDK supports them.
+
+public class DocumentSpellChecker {
+
+	private static final int MAX_WORD_LENGTH = 64; // longer tokens aren't words, so they are skipped
+	private static final int MAX_CONCURRENT_DOCUMENTS = 1024;
+
+	private final TrieSpellChecker dictionary;
+
+	// The dictionary shouldn't be changed while documents are being checked.
+	public DocumentSpellChecker(TrieSpellChecker dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	// A misspelled word, where it starts in the document (both counted from 1), and the close
+	// matches suggested for it.
+	public static class Misspelling {
+		private final String word;
+		private final int line;
+		private final int column;
+		private final Set<String> suggestions;
+
+		public Misspelling(String word, int line, int column, Set<String> suggestions) {
+			this.word = word;
+			this.line = line;
+			this.column = column;
+			this.suggestions = suggestions;
+		}
+
+		public String getWord() {
+			return word;
+		}
+
+		public int getLine() {
+			return line;
+		}
+
+		public int getColumn() {
+			return column;
+		}
+
+		public Set<String> getSuggestions() {
+			return suggestions;
+		}
+
+		public String toString() {
+			return line + ":" + column + " " + word + " " + suggestions;
+		}
+	}
+
+	// Returns the misspellings in the text from reader as a lazy stream. Nothing is read until
+	// the stream is consumed, and closing the stream closes the reader.
+	public Stream<Misspelling> check(Reader reader) {
+		Iterator<Misspelling> misspellings = new Iterator<Misspelling>() {
+			private final Tokenizer tokens = new Tokenizer(reader);
+			private Misspelling pending;
+
+			@Override
+			public boolean hasNext() {
+				while (pending == null && tokens.advance()) {
+					String word = tokens.word();
+					if (!isSpelledCorrectly(word)) {
+						pending = new Misspelling(word, tokens.line(), tokens.column(),
+								dictionary.closeMatches(word.toLowerCase()));
+					}
+				}
+				return pending != null;
+			}
+
+			@Override
+			public Misspelling next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Misspelling next = pending;
+				pending = null;
+				return next;
+			}
+		};
+		Spliterator<Misspelling> spliterator = Spliterators.spliteratorUnknownSize(misspellings,
+				Spliterator.ORDERED | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false).onClose(() -> {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	// Returns the misspellings in a UTF-8 file as a lazy stream, which should be closed afterwards.
+	public Stream<Misspelling> check(Path path) throws IOException {
+		return check(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+	}
+
+	// A word counts as spelled correctly as it is, or in lower case, so that capitalized words
+	// at the start of a sentence are accepted.
+	private boolean isSpelledCorrectly(String word) {
+		return dictionary.contains(word) || dictionary.contains(word.toLowerCase());
+	}
+
+	// Throughput figures for one checkAll run.
+	public static class Report {
+		private final long documents;
+		private final long bytes;
+		private final long misspellings;
+		private final double seconds;
+
+		public Report(long documents, long bytes, long misspellings, double seconds) {
+			this.documents = documents;
+			this.bytes = bytes;
+			this.misspellings = misspellings;
+			this.seconds = seconds;
+		}
+
+		public double documentsPerSecond() {
+			return documents / seconds;
+		}
+
+		public double megabytesPerSecond() {
+			return bytes / (1024.0 * 1024.0) / seconds;
+		}
+
+		public String toString() {
+			return String.format("%d documents, %d misspellings in %.2f s: %.1f documents/s, %.2f MB/s",
+					documents, misspellings, seconds, documentsPerSecond(), megabytesPerSecond());
+		}
+	}
+
+	// Checks every file at once, handing each misspelling to sink along with its file. sink is
+	// called from many threads. At most MAX_CONCURRENT_DOCUMENTS files are open at a time, and
+	// each one only holds its reader buffer and the current word.
+	public Report checkAll(List<Path> paths, BiConsumer<Path, Misspelling> sink) throws IOException, InterruptedException {
+		Semaphore open = new Semaphore(MAX_CONCURRENT_DOCUMENTS);
+		LongAdder bytes = new LongAdder();
+		LongAdder misspellings = new LongAdder();
+		List<Future<?>> results = new ArrayList<>();
+		ExecutorService executor = VirtualThreads.newPerTaskExecutor(Runtime.getRuntime().availableProcessors());
+		long start = System.nanoTime();
+
+		try {
+			for (Path path : paths) {
+				open.acquire();
+				results.add(executor.submit(() -> {
+					try (Stream<Misspelling> found = check(path)) {
+						found.forEach(misspelling -> {
+							misspellings.increment();
+							sink.accept(path, misspelling);
+						});
+						bytes.add(Files.size(path));
+					} finally {
+						open.release();
+					}
+					return null;
+				}));
+			}
+			for (Future<?> result : results) {
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		return new Report(paths.size(), bytes.sum(), misspellings.sum(), (System.nanoTime() - start) / 1000000000.0);
+	}
+
+	// Splits text into words as it is read, keeping track of where each word starts.
+	// A word is a run of letters, and may contain apostrophes between letters ("don't");
+	// apostrophes used as quotes at either end are left out. Anything else separates words.
+	private static class Tokenizer {
+		private final Reader reader;
+		private final char[] buffer = new char[8192];
+		private int position, limit;
+		private final StringBuilder word = new StringBuilder();
+		private int line = 1, column = 0; // position of the last character read
+		private int wordLine, wordColumn;
+		private boolean afterCarriageReturn;
+
+		public Tokenizer(Reader reader) {
+			this.reader = reader;
+		}
+
+		// Returns the next character, or -1 at the end of the text, updating the line and column.
+		private int read() {
+			if (position == limit) {
+				try {
+					limit = reader.read(buffer, 0, buffer.length);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				position = 0;
+				if (limit <= 0) {
+					limit = 0;
+					return -1;
+				}
+			}
+			char c = buffer[position++];
+			if (c == '\n' && afterCarriageReturn) {
+				// second half of a \r\n line break, already counted
+			} else if (c == '\n' || c == '\r') {
+				line++;
+				column = 0;
+			} else {
+				column++;
+			}
+			afterCarriageReturn = c == '\r';
+			return c;
+		}
+
+		// Moves to the next word, returning false at the end of the text.
+		public boolean advance() {
+			word.setLength(0);
+			boolean tooLong = false;
+			while (true) {
+				int c = read();
+				if (c != -1 && (Character.isLetter(c) || (c == '\'' && word.length() > 0))) {
+					if (word.length() == 0) {
+						wordLine = line;
+						wordColumn = column;
+					}
+					if (word.length() < MAX_WORD_LENGTH) {
+						word.append((char) c);
+					} else {
+						tooLong = true;
+					}
+					continue;
+				}
+
+				// The word has ended, so drop any trailing apostrophes.
+				while (word.length() > 0 && word.charAt(word.length() - 1) == '\'') {
+					word.setLength(word.length() - 1);
+				}
+				if (word.length() > 0 && !tooLong) {
+					return true;
+				}
+				if (c == -1) {
+					return false;
+				}
+				word.setLength(0);
+				tooLong = false;
+			}
+		}
+
+		public String word() {
+			return word.toString();
+		}
+
+		public int line() {
+			return wordLine;
+		}
+
+		public int column() {
+			return wordColumn;
+		}
+	}
+
+	// main method checks the documents given after the dictionary (files, or directories of
+	// files) and prints the misspellings and throughput
+	public static void main(String[] args) throws Exception {
+		String words = args.length > 0 ? args[0] : "wordlist_English.txt";
+		TrieSpellChecker dictionary = new TrieSpellChecker();
+		dictionary.addFile(words);
+		DocumentSpellChecker checker = new DocumentSpellChecker(dictionary);
+
+		List<Path> paths = new ArrayList<>();
+		for (int i = 1; i < args.length; i++) {
+			File file = new File(args[i]);
+			File[] children = file.listFiles();
+			if (children == null) {
+				paths.add(file.toPath());
+			} else {
+				for (File child : children) {
+					if (child.isFile()) {
+						paths.add(child.toPath());
+					}
+				}
+			}
+		}
+		if (paths.isEmpty()) {
+			paths.add(Paths.get("SpellCheckerClient.java"));
+		}
+
+		boolean printAll = paths.size() <= 10;
+		Report report = checker.checkAll(paths, (path, misspelling) -> {
+			if (printAll) {
+				System.out.println(path + ":" + misspelling);
+			}
+		});
+		System.out.println("virtual threads: " + VirtualThreads.available());
+		System.out.println(report);
+	}
+}
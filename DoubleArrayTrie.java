@@ -0,0 +1,302 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Implements a read-only dictionary as a double-array trie. Instead of one object per node,
+// the whole trie lives in two int arrays: a state s moves on character code c to
+// t = base[s] + c, and the move is valid only if check[t] == s. Code 0 is reserved as the
+// end-of-word marker, so a word ends at s when check[base[s]] == s.
+
+public class DoubleArrayTrie {
+
+	private static final int ROOT = 1;
+	private static final int END = 0; // code of the end-of-word marker
+
+	private int[] base = new int[0];
+	private int[] check = new int[0];
+	private int[] codes = new int[0]; // codes[ch] is the code of character ch, or 0 if ch never occurs
+	private int alphabetSize;
+	private int size;
+	private int nextCheckPos;
+
+	// Reads in Strings from text file and builds the trie from them.
+	public void addFile(String filename) throws FileNotFoundException {
+		try {
+			build(WordReader.readAll(filename));
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Builds the trie from the given words, replacing anything built before.
+	public void build(List<String> words) {
+		String[] sorted = words.toArray(new String[0]);
+		Arrays.sort(sorted);
+
+		// Drop duplicates so every word is inserted exactly once.
+		int unique = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (unique == 0 || !sorted[i].equals(sorted[unique - 1])) {
+				sorted[unique++] = sorted[i];
+			}
+		}
+		size = unique;
+
+		// Number the characters that actually occur, in increasing order, starting from 1.
+		int maxChar = 0;
+		for (int i = 0; i < unique; i++) {
+			for (int j = 0; j < sorted[i].length(); j++) {
+				maxChar = Math.max(maxChar, sorted[i].charAt(j));
+			}
+		}
+		codes = new int[maxChar + 1];
+		for (int i = 0; i < unique; i++) {
+			for (int j = 0; j < sorted[i].length(); j++) {
+				codes[sorted[i].charAt(j)] = 1;
+			}
+		}
+		alphabetSize = 0;
+		for (int ch = 0; ch < codes.length; ch++) {
+			if (codes[ch] != 0) {
+				codes[ch] = ++alphabetSize;
+			}
+		}
+
+		base = new int[Math.max(1024, unique * 2)];
+		check = new int[base.length];
+		check[ROOT] = -1; // the root has no parent, but its slot is taken
+		nextCheckPos = ROOT + 1;
+		insert(ROOT, sorted, 0, unique, 0);
+
+		// Trim the arrays down to the last slot that is in use.
+		int last = check.length - 1;
+		while (last > ROOT && check[last] == 0) {
+			last--;
+		}
+		base = Arrays.copyOf(base, last + 1);
+		check = Arrays.copyOf(check, last + 1);
+	}
+
+	// Places the children of state, which are the characters at position depth of the
+	// sorted words in [from, to), and then recursively places each of their subtrees.
+	private void insert(int state, String[] words, int from, int to, int depth) {
+		// Collect the distinct codes at this depth. Since the words are sorted, a word that
+		// ends here comes first and each code covers a contiguous run of words.
+		int[] childCodes = new int[alphabetSize + 1];
+		int[] starts = new int[alphabetSize + 2];
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			int code = words[i].length() == depth ? END : codes[words[i].charAt(depth)];
+			if (count == 0 || childCodes[count - 1] != code) {
+				childCodes[count] = code;
+				starts[count] = i;
+				count++;
+			}
+		}
+		starts[count] = to;
+		if (count == 0) {
+			return; // only the root of an empty trie has nothing below it
+		}
+
+		int b = findBase(childCodes, count);
+		base[state] = b;
+		for (int i = 0; i < count; i++) {
+			check[b + childCodes[i]] = state;
+		}
+		for (int i = 0; i < count; i++) {
+			if (childCodes[i] != END) {
+				insert(b + childCodes[i], words, starts[i], starts[i + 1], depth + 1);
+			}
+		}
+	}
+
+	// Finds the smallest base at which every one of the given codes lands on a free slot.
+	private int findBase(int[] childCodes, int count) {
+		int first = childCodes[0];
+		int last = childCodes[count - 1];
+		int pos = Math.max(first + 1, nextCheckPos) - 1;
+		int taken = 0;
+		boolean firstFree = true;
+
+		while (true) {
+			pos++;
+			ensureCapacity(pos + last - first);
+			if (check[pos] != 0) {
+				taken++;
+				continue;
+			} else if (firstFree) {
+				nextCheckPos = pos;
+				firstFree = false;
+			}
+
+			int b = pos - first;
+			boolean fits = true;
+			for (int i = 1; i < count; i++) {
+				if (check[b + childCodes[i]] != 0) {
+					fits = false;
+					break;
+				}
+			}
+			if (fits) {
+				// Once the region in front of nextCheckPos is almost full, skip past it for
+				// later searches.
+				if ((double) taken / (pos - nextCheckPos + 1) >= 0.95) {
+					nextCheckPos = pos;
+				}
+				return b;
+			}
+		}
+	}
+
+	private void ensureCapacity(int index) {
+		if (index >= check.length) {
+			int capacity = Math.max(index + 1, check.length * 2);
+			base = Arrays.copyOf(base, capacity);
+			check = Arrays.copyOf(check, capacity);
+		}
+	}
+
+	// Follows the characters of s from the root. Returns the state reached, or -1 if s is not
+	// a prefix of any word.
+	private int walk(String s) {
+		int state = ROOT;
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if (ch >= codes.length || codes[ch] == 0) {
+				return -1;
+			}
+			int next = base[state] + codes[ch];
+			if (next >= check.length || check[next] != state) {
+				return -1;
+			}
+			state = next;
+		}
+		return state;
+	}
+
+	private boolean isWordEnd(int state) {
+		int end = base[state] + END;
+		return end < check.length && check[end] == state;
+	}
+
+	// Returns whether s was one of the words the trie was built from.
+	public boolean contains(String s) {
+		int state = walk(s);
+		return state != -1 && isWordEnd(state);
+	}
+
+	// Returns whether some word starts with s.
+	public boolean hasPrefix(String s) {
+		return walk(s) != -1;
+	}
+
+	// Returns every word that starts with s.
+	public Set<String> autocomplete(String s) {
+		Set<String> result = new HashSet<>();
+		int state = walk(s);
+		if (state != -1) {
+			char[] alphabet = new char[alphabetSize + 1];
+			for (int ch = 0; ch < codes.length; ch++) {
+				alphabet[codes[ch]] = (char) ch;
+			}
+			collect(result, new StringBuilder(s), state, alphabet);
+		}
+		return result;
+	}
+
+	// Adds the words below state to the set, with buffer holding the characters leading to state.
+	private void collect(Set<String> result, StringBuilder buffer, int state, char[] alphabet) {
+		if (isWordEnd(state)) {
+			result.add(buffer.toString());
+		}
+		int b = base[state];
+		for (int code = 1; code <= alphabetSize && b + code < check.length; code++) {
+			if (check[b + code] == state) {
+				buffer.append(alphabet[code]);
+				collect(result, buffer, b + code, alphabet);
+				buffer.setLength(buffer.length() - 1);
+			}
+		}
+	}
+
+	// Returns the number of words in the trie.
+	public int size() {
+		return size;
+	}
+
+	// Returns the number of slots in the base and check arrays.
+	public int capacity() {
+		return check.length;
+	}
+
+	// Returns the heap currently in use, after asking for a garbage collection first.
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	// Times rounds of lookups for every word plus a misspelled copy of it, and returns the
+	// average time per lookup in nanoseconds from the fastest round.
+	private static double lookupNanos(List<String> words, java.util.function.Predicate<String> contains) {
+		String[] misses = new String[words.size()];
+		for (int i = 0; i < misses.length; i++) {
+			misses[i] = words.get(i) + "q";
+		}
+		double best = Double.MAX_VALUE;
+		int found = 0;
+		for (int round = 0; round < 10; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < misses.length; i++) {
+				if (contains.test(words.get(i))) {
+					found++;
+				}
+				if (contains.test(misses[i])) {
+					found++;
+				}
+			}
+			best = Math.min(best, (double) (System.nanoTime() - start) / (2 * misses.length));
+		}
+		if (found < 0) { // keeps the lookups from being optimized away
+			System.out.println(found);
+		}
+		return best;
+	}
+
+	// main method compares the double-array trie with TrieSpellChecker on lookup time and retained heap
+	public static void main(String[] args) throws Exception {
+		String file = args.length > 0 ? args[0] : "wordlist_English.txt";
+		List<String> words = WordReader.readAll(file);
+
+		long before = usedHeap();
+		TrieSpellChecker trie = new TrieSpellChecker();
+		for (String word : words) {
+			trie.add(word);
+		}
+		long trieHeap = usedHeap() - before;
+
+		before = usedHeap();
+		DoubleArrayTrie doubleArray = new DoubleArrayTrie();
+		doubleArray.build(words);
+		long doubleArrayHeap = usedHeap() - before;
+
+		System.out.println(doubleArray.contains("abandon"));
+		System.out.println(doubleArray.contains("abandona"));
+		System.out.println(doubleArray.autocomplete("legend"));
+
+		System.out.println("words: " + doubleArray.size() + ", double-array slots: " + doubleArray.capacity());
+		System.out.println("retained heap for TrieSpellChecker: " + (trieHeap >> 10) + " KB");
+		System.out.println("retained heap for DoubleArrayTrie: " + (doubleArrayHeap >> 10) + " KB");
+		System.out.printf("contains with TrieSpellChecker: %.1f ns%n", lookupNanos(words, trie::contains));
+		System.out.printf("contains with DoubleArrayTrie: %.1f ns%n", lookupNanos(words, doubleArray::contains));
+	}
+}
@@ -0,0 +1,305 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+// Typo-tolerant autocomplete over a TrieSpellChecker: finds the words that start with something
+// within maxDistance insertions, deletions or replacements of what has been typed, so "recie"
+// still offers "receive" and "receiver". A word's distance is the smallest edit distance between
+// the typed text and any prefix of the word.
+// The trie is walked once, keeping one row of the edit distance table per node as closeMatches
+// does, but only the typed text has to match. Where no row below a node can get any better
+// (every entry is over maxDistance, or the distance is already 0), the walk stops and the whole
+// subtree is taken at that node's distance. The results are then picked best first, closest
+// first, then by score for words added with one, then alphabetically, the same way topK does,
+// so only as much of each subtree is opened as the limit needs.
+// A search is also a session for a search box: call update with the whole text after each
+// keystroke. When the text has only grown, every node the walk reached keeps its row and gets
+// one more column, and only nodes that come within reach are walked from scratch. Anything else,
+// such as a backspace, starts over. A search is meant for one thread, and the trie mustn't be
+// changed while it is in use.
+
+public class FuzzyPrefixSearch {
+
+	private final TrieSpellChecker trie;
+	private final int maxDistance;
+	private String typed = "";
+	private Entry root;
+	private int entryCount; // nodes the walk has reached, for the statistics
+
+	// A node the walk has reached, with its row of the edit distance table. Open entries have an
+	// entry for every child; closed ones have every row entry over maxDistance, so their
+	// children haven't been looked at.
+	private static final class Entry {
+		private final TrieSpellChecker.Node node;
+		private final Entry parent;
+		private final char letter; // the character leading here from parent
+		private final int depth;
+		private int[] row; // row[j] is the distance between this node's path and the first j typed chars
+		private int best; // smallest entry in row
+		private Entry[] children; // null while closed
+
+		public Entry(TrieSpellChecker.Node node, Entry parent, char letter, int depth) {
+			this.node = node;
+			this.parent = parent;
+			this.letter = letter;
+			this.depth = depth;
+		}
+	}
+
+	public FuzzyPrefixSearch(TrieSpellChecker trie, int maxDistance) {
+		if (maxDistance < 0 || maxDistance > 3) {
+			throw new IllegalArgumentException("maxDistance must be between 0 and 3: " + maxDistance);
+		}
+		this.trie = trie;
+		this.maxDistance = maxDistance;
+	}
+
+	// Moves the search on to text, reusing the walk so far when text only adds to what was
+	// typed before. Returns this search, ready for top.
+	public FuzzyPrefixSearch update(String text) {
+		if (root == null || !text.startsWith(typed)) {
+			start(text);
+		} else {
+			for (int n = typed.length() + 1; n <= text.length(); n++) {
+				typed = text.substring(0, n);
+				extend(root, n);
+			}
+		}
+		return this;
+	}
+
+	// Walks the trie from scratch for text.
+	private void start(String text) {
+		typed = text;
+		entryCount = 1;
+		root = new Entry(trie.root, null, ' ', 0);
+		root.row = new int[text.length() + 8];
+		for (int j = 0; j <= text.length(); j++) {
+			root.row[j] = j;
+		}
+		root.best = 0;
+		open(root);
+	}
+
+	// Fills in the rows of entry's children and opens those still within reach.
+	private void open(Entry entry) {
+		TrieSpellChecker.Node node = entry.node;
+		entry.children = new Entry[node.childCount()];
+		for (int i = 0; i < node.childCount(); i++) {
+			Entry child = new Entry(node.childAt(i), entry, node.keyAt(i), entry.depth + 1);
+			fillRow(child);
+			entry.children[i] = child;
+			entryCount++;
+			if (child.best <= maxDistance) {
+				open(child);
+			}
+		}
+	}
+
+	// Works out the whole row of entry from its parent's.
+	private void fillRow(Entry entry) {
+		int n = typed.length();
+		int[] previous = entry.parent.row;
+		int[] row = new int[n + 8];
+		row[0] = entry.depth;
+		int best = row[0];
+		for (int j = 1; j <= n; j++) {
+			int replace = previous[j - 1] + (typed.charAt(j - 1) == entry.letter ? 0 : 1);
+			row[j] = Math.min(replace, Math.min(previous[j] + 1, row[j - 1] + 1));
+			best = Math.min(best, row[j]);
+		}
+		entry.row = row;
+		entry.best = best;
+	}
+
+	// Adds column n (for the character just typed) to the rows of entry and everything below it.
+	// The earlier columns don't change, so an open entry stays open, and a closed one opens if
+	// the new column brings it within reach.
+	private void extend(Entry entry, int n) {
+		if (n >= entry.row.length) {
+			entry.row = Arrays.copyOf(entry.row, n * 2);
+		}
+		if (entry.parent == null) {
+			entry.row[n] = n;
+		} else {
+			int[] previous = entry.parent.row;
+			int replace = previous[n - 1] + (typed.charAt(n - 1) == entry.letter ? 0 : 1);
+			entry.row[n] = Math.min(replace, Math.min(previous[n] + 1, entry.row[n - 1] + 1));
+		}
+		entry.best = Math.min(entry.best, entry.row[n]);
+
+		if (entry.children != null) {
+			for (Entry child : entry.children) {
+				extend(child, n);
+			}
+		} else if (entry.best <= maxDistance) {
+			open(entry);
+		}
+	}
+
+	// Returns the (at most) limit best words for what has been typed so far, best first.
+	public List<String> top(int limit) {
+		List<String> result = new ArrayList<>();
+		if (root == null || limit <= 0) {
+			return result;
+		}
+		PriorityQueue<Candidate> queue = new PriorityQueue<>();
+		seed(queue, root, root.row[typed.length()]);
+
+		while (!queue.isEmpty() && result.size() < limit) {
+			Candidate best = queue.poll();
+			if (best.isWord) {
+				result.add(best.text);
+				continue;
+			}
+			TrieSpellChecker.Node node = best.node;
+			if (node.isShaded()) {
+				queue.add(new Candidate(node, best.text, best.distance, node.score(), true));
+			}
+			for (int i = 0; i < node.childCount(); i++) {
+				TrieSpellChecker.Node child = node.childAt(i);
+				queue.add(new Candidate(child, best.text + node.keyAt(i), best.distance, child.maxScore(), false));
+			}
+		}
+		return result;
+	}
+
+	// Queues the words and subtrees below entry, where distance is the smallest distance of the
+	// typed text from any prefix of entry's path (entry's own path included).
+	private void seed(PriorityQueue<Candidate> queue, Entry entry, int distance) {
+		if (entry.children == null || distance == 0) {
+			// Nothing below can get closer, so every word here has this distance.
+			if (distance <= maxDistance) {
+				queue.add(new Candidate(entry.node, text(entry), distance, entry.node.maxScore(), false));
+			}
+			return;
+		}
+		if (entry.node.isShaded() && distance <= maxDistance) {
+			queue.add(new Candidate(entry.node, text(entry), distance, entry.node.score(), true));
+		}
+		int n = typed.length();
+		for (Entry child : entry.children) {
+			seed(queue, child, Math.min(distance, child.row[n]));
+		}
+	}
+
+	private static String text(Entry entry) {
+		char[] chars = new char[entry.depth];
+		for (Entry e = entry; e.parent != null; e = e.parent) {
+			chars[e.depth - 1] = e.letter;
+		}
+		return new String(chars);
+	}
+
+	// Returns the number of trie nodes the walk is keeping a row for.
+	public int entryCount() {
+		return entryCount;
+	}
+
+	// An entry in the results queue: either a finished word, or a subtree with the best score
+	// found anywhere inside it, along with the distance all of its words share.
+	private static class Candidate implements Comparable<Candidate> {
+		private final TrieSpellChecker.Node node;
+		private final String text;
+		private final int distance;
+		private final long priority;
+		private final boolean isWord;
+
+		public Candidate(TrieSpellChecker.Node node, String text, int distance, long priority, boolean isWord) {
+			this.node = node;
+			this.text = text;
+			this.distance = distance;
+			this.priority = priority;
+			this.isWord = isWord;
+		}
+
+		// Closer first, then higher priority, then alphabetical, with a word before the subtree
+		// it heads, as in TrieSpellChecker.topK.
+		public int compareTo(Candidate other) {
+			if (distance != other.distance) {
+				return Integer.compare(distance, other.distance);
+			}
+			if (priority != other.priority) {
+				return Long.compare(other.priority, priority);
+			}
+			int compare = text.compareTo(other.text);
+			if (compare != 0) {
+				return compare;
+			}
+			return isWord == other.isWord ? 0 : (isWord ? -1 : 1);
+		}
+	}
+
+	// main method shows a few fuzzy completions and times typing words with a typo in them one
+	// keystroke at a time, against starting over each time and against closeMatches followed by
+	// autocomplete on every match
+	// Usage: java FuzzyPrefixSearch [weighted word list]
+	public static void main(String[] args) throws IOException {
+		String file = args.length > 0 ? args[0] : "wordlist_English.txt";
+		TrieSpellChecker trie = new TrieSpellChecker();
+		if (args.length > 0) {
+			trie.addWeightedFile(file);
+		} else {
+			trie.addFile(file);
+		}
+		System.out.println("recie: " + trie.fuzzyAutocomplete("recie", 1, 10));
+		System.out.println("acomod: " + trie.fuzzyAutocomplete("acomod", 2, 10));
+
+		// Words with one typo, typed a character at a time.
+		List<String> words = new ArrayList<>();
+		trie.completions("").forEachRemaining(words::add);
+		Random random = new Random(42);
+		List<String> typed = new ArrayList<>();
+		while (typed.size() < 1000) {
+			String word = words.get(random.nextInt(words.size()));
+			if (word.length() >= 6) {
+				int at = 1 + random.nextInt(word.length() - 2);
+				typed.add(word.substring(0, at) + (char) ('a' + random.nextInt(26)) + word.substring(at + 1));
+			}
+		}
+
+		for (int round = 0; round < 3; round++) { // the first rounds are warmup
+			long keystrokes = 0;
+			long found = 0;
+			long start = System.nanoTime();
+			for (String text : typed) {
+				FuzzyPrefixSearch search = trie.fuzzyPrefixSearch(1);
+				for (int n = 1; n <= text.length(); n++) {
+					found += search.update(text.substring(0, n)).top(10).size();
+					keystrokes++;
+				}
+			}
+			double incremental = (System.nanoTime() - start) / 1000.0 / keystrokes;
+
+			start = System.nanoTime();
+			for (String text : typed) {
+				for (int n = 1; n <= text.length(); n++) {
+					found += trie.fuzzyAutocomplete(text.substring(0, n), 1, 10).size();
+				}
+			}
+			double fromScratch = (System.nanoTime() - start) / 1000.0 / keystrokes;
+
+			// The old way: every close match of the typed text, then every completion of each.
+			long naiveKeystrokes = 0;
+			start = System.nanoTime();
+			for (String text : typed.subList(0, 100)) {
+				for (int n = 1; n <= text.length(); n++) {
+					naiveKeystrokes++;
+					for (String match : trie.closeMatches(text.substring(0, n))) {
+						Set<String> completions = trie.autocomplete(match);
+						found += completions.size();
+					}
+				}
+			}
+			double naive = (System.nanoTime() - start) / 1000.0 / naiveKeystrokes;
+			if (round == 2) {
+				System.out.printf("per keystroke: incremental %.1f us, from scratch %.1f us, closeMatches + autocomplete %.1f us (%d found)%n",
+						incremental, fromScratch, naive, found);
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+import java.util.Set;
+
+// Wraps any SpellChecker and records the latency of every call into a SpellCheckerMetrics,
+// along with whether each contains call found its word. The wrapped checker is handed the same
+// metrics, so backends that can count their traversal work (TrieSpellChecker does) report it
+// there too. The wrapper adds two System.nanoTime calls and a few LongAdder increments per call.
+
+public class InstrumentedSpellChecker implements SpellChecker {
+
+	private final SpellChecker checker;
+	private final SpellCheckerMetrics metrics;
+
+	public InstrumentedSpellChecker(SpellChecker checker) {
+		this(checker, new SpellCheckerMetrics());
+	}
+
+	// Several checkers can share one metrics object to be counted together.
+	public InstrumentedSpellChecker(SpellChecker checker, SpellCheckerMetrics metrics) {
+		this.checker = checker;
+		this.metrics = metrics;
+		checker.setMetrics(metrics);
+	}
+
+	public SpellCheckerMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public void add(String s) {
+		long start = System.nanoTime();
+		checker.add(s);
+		metrics.record(SpellCheckerMetrics.Operation.ADD, System.nanoTime() - start);
+	}
+
+	@Override
+	public boolean contains(String s) {
+		long start = System.nanoTime();
+		boolean found = checker.contains(s);
+		metrics.record(SpellCheckerMetrics.Operation.CONTAINS, System.nanoTime() - start);
+		metrics.recordLookup(found);
+		return found;
+	}
+
+	@Override
+	public Set<String> autocomplete(String s) {
+		long start = System.nanoTime();
+		Set<String> result = checker.autocomplete(s);
+		metrics.record(SpellCheckerMetrics.Operation.AUTOCOMPLETE, System.nanoTime() - start);
+		return result;
+	}
+
+	@Override
+	public Set<String> closeMatches(String s) {
+		long start = System.nanoTime();
+		Set<String> result = checker.closeMatches(s);
+		metrics.record(SpellCheckerMetrics.Operation.CLOSE_MATCHES, System.nanoTime() - start);
+		return result;
+	}
+
+	@Override
+	public int size() {
+		return checker.size();
+	}
+
+	// Runs the same queries against a backend and prints its metrics.
+	private static void exercise(String name, SpellChecker backend, String[] queries) throws Exception {
+		InstrumentedSpellChecker checker = new InstrumentedSpellChecker(backend);
+		checker.getMetrics().register(name);
+		for (int round = 0; round < 20; round++) {
+			for (String query : queries) {
+				checker.contains(query);
+				checker.autocomplete(query);
+				checker.closeMatches(query);
+			}
+		}
+		System.out.println(name + " (" + checker.size() + " words):");
+		System.out.println(checker.getMetrics().snapshot());
+	}
+
+	// main method loads the word list into each backend behind the same interface and prints
+	// the metrics for a mix of queries. The metrics are also registered with JMX, so they can
+	// be watched from jconsole while this runs.
+	public static void main(String[] args) throws Exception {
+		String file = args.length > 0 ? args[0] : "wordlist_English.txt";
+		String[] queries = { "abandon", "abandona", "legend", "receive", "recieve", "ary", "teh", "zzyzx" };
+
+		TrieSpellChecker trie = new TrieSpellChecker();
+		trie.addFile(file);
+		BSTSpellChecker bst = new BSTSpellChecker();
+		bst.balancedAddFile(file);
+		exercise("TrieSpellChecker", trie, queries);
+		exercise("BSTSpellChecker", bst, queries);
+	}
+}
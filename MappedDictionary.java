@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+// A read-only dictionary that answers queries straight from a memory-mapped file written by
+// TrieSpellChecker.compile. Opening one only maps the file, so startup doesn't depend on the
+// size of the dictionary; pages are read in by the OS as queries touch them.
+//
+// File layout (all values big-endian):
+//   header: int magic ("TSPD"), int version, int word count, int offset of the root node
+//   node:   int (child count << 1 | shaded), char[child count] sorted child characters,
+//           int[child count] offsets of the children
+
+public class MappedDictionary implements SpellChecker {
+
+	static final int MAGIC = 0x54535044;
+	static final int VERSION = 1;
+	private static final int HEADER_SIZE = 16;
+
+	private final ByteBuffer buffer;
+	private final int wordCount;
+	private final int root;
+
+	// Maps the given dictionary file. Throws an IOException if the file isn't a dictionary
+	// written by a compatible version of TrieSpellChecker.compile.
+	public MappedDictionary(String filename) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(filename + " is not a dictionary file");
+			}
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (mapped.getInt(0) != MAGIC) {
+				throw new IOException(filename + " is not a dictionary file");
+			}
+			if (mapped.getInt(4) != VERSION) {
+				throw new IOException(filename + " has unsupported version " + mapped.getInt(4));
+			}
+			buffer = mapped;
+			wordCount = mapped.getInt(8);
+			root = mapped.getInt(12);
+		}
+	}
+
+	private int childCount(int node) {
+		return buffer.getInt(node) >>> 1;
+	}
+
+	private boolean isShaded(int node) {
+		return (buffer.getInt(node) & 1) != 0;
+	}
+
+	private char keyAt(int node, int i) {
+		return buffer.getChar(node + 4 + 2 * i);
+	}
+
+	private int childAt(int node, int i) {
+		return buffer.getInt(node + 4 + 2 * childCount(node) + 4 * i);
+	}
+
+	// Returns the offset of the child of node holding c, or -1 if there is none. The child
+	// characters are sorted, so they are binary searched.
+	private int getChild(int node, char c) {
+		int low = 0;
+		int high = childCount(node) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			char key = keyAt(node, middle);
+			if (key < c) {
+				low = middle + 1;
+			} else if (key > c) {
+				high = middle - 1;
+			} else {
+				return childAt(node, middle);
+			}
+		}
+		return -1;
+	}
+
+	// Follows the characters of s from the root, returning the node reached or -1.
+	private int walk(String s) {
+		int node = root;
+		for (int i = 0; i < s.length() && node != -1; i++) {
+			node = getChild(node, s.charAt(i));
+		}
+		return node;
+	}
+
+	// The file is mapped read-only, so words can't be added.
+	@Override
+	public void add(String s) {
+		throw new UnsupportedOperationException("a mapped dictionary can't be changed");
+	}
+
+	// Returns whether s is a word in the dictionary.
+	@Override
+	public boolean contains(String s) {
+		int node = walk(s);
+		return node != -1 && isShaded(node);
+	}
+
+	// Returns every word that starts with s.
+	@Override
+	public Set<String> autocomplete(String s) {
+		Set<String> result = new HashSet<>();
+		int node = walk(s);
+		if (node != -1) {
+			collect(result, new StringBuilder(s), node);
+		}
+		return result;
+	}
+
+	private void collect(Set<String> result, StringBuilder buffer, int node) {
+		if (isShaded(node)) {
+			result.add(buffer.toString());
+		}
+		for (int i = 0; i < childCount(node); i++) {
+			buffer.append(keyAt(node, i));
+			collect(result, buffer, childAt(node, i));
+			buffer.setLength(buffer.length() - 1);
+		}
+	}
+
+	// Returns the words that can be made from s with at most one insertion, deletion or
+	// replacement, including s itself if it is a word.
+	@Override
+	public Set<String> closeMatches(String s) {
+		return closeMatches(s, 1);
+	}
+
+	// Returns the words within maxDistance edits of s. The dictionary is walked once while
+	// filling in one row of the edit distance table per character, and a branch is dropped as
+	// soon as every entry in its row is over maxDistance.
+	public Set<String> closeMatches(String s, int maxDistance) {
+		Set<String> result = new HashSet<>();
+		int[] row = new int[s.length() + 1];
+		for (int i = 0; i < row.length; i++) {
+			row[i] = i;
+		}
+		closeMatchRecurse(result, s, maxDistance, new StringBuilder(), root, row);
+		return result;
+	}
+
+	private void closeMatchRecurse(Set<String> result, String s, int maxDistance, StringBuilder buffer,
+			int node, int[] previous) {
+		if (isShaded(node) && previous[s.length()] <= maxDistance) {
+			result.add(buffer.toString());
+		}
+		for (int i = 0; i < childCount(node); i++) {
+			char c = keyAt(node, i);
+			int[] row = new int[previous.length];
+			row[0] = previous[0] + 1;
+			int best = row[0];
+			for (int j = 1; j < row.length; j++) {
+				int replace = previous[j - 1] + (s.charAt(j - 1) == c ? 0 : 1);
+				row[j] = Math.min(replace, Math.min(previous[j] + 1, row[j - 1] + 1));
+				best = Math.min(best, row[j]);
+			}
+			if (best <= maxDistance) {
+				buffer.append(c);
+				closeMatchRecurse(result, s, maxDistance, buffer, childAt(node, i), row);
+				buffer.setLength(buffer.length() - 1);
+			}
+		}
+	}
+
+	// Returns the number of words in the dictionary.
+	@Override
+	public int size() {
+		return wordCount;
+	}
+
+	// main method compiles the word list once and then times opening the compiled file
+	public static void main(String[] args) throws IOException {
+		String words = args.length > 0 ? args[0] : "wordlist_English.txt";
+		String compiled = args.length > 1 ? args[1] : "wordlist_English.dict";
+
+		TrieSpellChecker trie = new TrieSpellChecker();
+		trie.addFileMinimized(words);
+		trie.compile(compiled);
+
+		long start = System.nanoTime();
+		MappedDictionary dictionary = new MappedDictionary(compiled);
+		long finish = System.nanoTime();
+		System.out.println("opened " + dictionary.size() + " words in " + ((finish - start) / 1000000.0) + " ms");
+
+		System.out.println(dictionary.contains("abandon"));
+		System.out.println(dictionary.contains("abandona"));
+		System.out.println(dictionary.autocomplete("legend"));
+		System.out.println(dictionary.closeMatches("ary"));
+	}
+}
@@ -0,0 +1,496 @@
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// A trie like TrieSpellChecker whose nodes live outside the Java heap, in large direct
+// ByteBuffers (slabs), so a dictionary of tens of millions of words adds almost nothing for
+// the garbage collector to trace. Nodes and their child lists are addressed by int handles
+// rather than object references: a handle counts 4-byte units, with the top bits picking the
+// slab and the rest the position in it. Handle 0 means no node.
+//
+// A node is 8 bytes: an int holding its child count, the size class of its child list and
+// whether it is shaded, then the handle of its child list. A child list with room for c
+// children (c is a power of two) holds c sorted chars and then c child handles. When a list
+// fills up it is copied into one twice the size and the old one goes onto a free list for
+// its size class, to be reused by the next list of that size. Everything else is handed out
+// by bumping a pointer through the current slab.
+//
+// The memory belongs to the checker until close(), which releases every slab at once;
+// the checker can't be used after that. Like TrieSpellChecker, it isn't thread safe.
+
+public class OffHeapTrieSpellChecker implements SpellChecker, Closeable {
+
+	private static final int SLAB_SHIFT = 22; // 2^22 units of 4 bytes, so 16 MB per slab
+	private static final int SLAB_UNITS = 1 << SLAB_SHIFT;
+	private static final int UNIT_MASK = SLAB_UNITS - 1;
+	private static final int MAX_SLABS = 1 << (31 - SLAB_SHIFT); // handles stay positive ints
+	private static final int LINEAR_SCAN_LIMIT = 8;
+
+	// Node fields, as byte offsets from the start of the node.
+	private static final int META = 0; // count << 6 | size class << 1 | shaded
+	private static final int EDGES = 4;
+	private static final int NODE_UNITS = 2;
+
+	private ByteBuffer[] slabs = new ByteBuffer[4];
+	private int slabCount;
+	private int top; // next free unit in the last slab
+	private final int[] freeLists = new int[17]; // first free child list of each size class, or 0
+	private final int root;
+	private int size;
+	private long allocatedBytes;
+	private boolean closed;
+
+	public OffHeapTrieSpellChecker() {
+		addSlab();
+		top = 1; // keeps handle 0 free to mean no node
+		root = allocate(NODE_UNITS);
+	}
+
+	private void addSlab() {
+		if (slabCount == MAX_SLABS) {
+			throw new IllegalStateException("off-heap trie is full");
+		}
+		if (slabCount == slabs.length) {
+			slabs = Arrays.copyOf(slabs, slabCount * 2);
+		}
+		slabs[slabCount++] = ByteBuffer.allocateDirect(SLAB_UNITS * 4);
+		top = 0;
+	}
+
+	// Returns a block of the given number of units from the end of the current slab.
+	private int allocate(int units) {
+		if (top + units > SLAB_UNITS) {
+			addSlab();
+		}
+		int handle = (slabCount - 1) << SLAB_SHIFT | top;
+		top += units;
+		allocatedBytes += units * 4L;
+		return handle;
+	}
+
+	// Units needed by a child list with room for 1 << sizeClass children.
+	private static int edgeUnits(int sizeClass) {
+		int capacity = 1 << sizeClass;
+		return (capacity + 1) / 2 + capacity; // the chars, two to a unit, then the handles
+	}
+
+	private int allocateEdges(int sizeClass) {
+		int handle = freeLists[sizeClass];
+		if (handle != 0) {
+			freeLists[sizeClass] = getInt(handle, 0);
+			return handle;
+		}
+		return allocate(edgeUnits(sizeClass));
+	}
+
+	// Puts a child list on the free list of its size class, linked through its first unit.
+	private void freeEdges(int handle, int sizeClass) {
+		putInt(handle, 0, freeLists[sizeClass]);
+		freeLists[sizeClass] = handle;
+	}
+
+	private ByteBuffer slab(int handle) {
+		return slabs[handle >>> SLAB_SHIFT];
+	}
+
+	private static int position(int handle, int byteOffset) {
+		return ((handle & UNIT_MASK) << 2) + byteOffset;
+	}
+
+	private int getInt(int handle, int byteOffset) {
+		return slab(handle).getInt(position(handle, byteOffset));
+	}
+
+	private void putInt(int handle, int byteOffset, int value) {
+		slab(handle).putInt(position(handle, byteOffset), value);
+	}
+
+	private void putChar(int handle, int byteOffset, char c) {
+		slab(handle).putChar(position(handle, byteOffset), c);
+	}
+
+	// Byte offset of the child handles in a list of the given size class.
+	private static int handlesOffset(int sizeClass) {
+		return 4 * (((1 << sizeClass) + 1) / 2);
+	}
+
+	private static int count(int meta) {
+		return meta >>> 6;
+	}
+
+	private static int sizeClass(int meta) {
+		return (meta >>> 1) & 31;
+	}
+
+	private static boolean isShaded(int meta) {
+		return (meta & 1) != 0;
+	}
+
+	// The key of child i is at byte 2i of its child list, and its handle at byte
+	// handlesOffset(size class) + 4i.
+	private char keyAt(int edges, int i) {
+		return slab(edges).getChar(position(edges, 2 * i));
+	}
+
+	private int childAt(int edges, int sizeClass, int i) {
+		return getInt(edges, handlesOffset(sizeClass) + 4 * i);
+	}
+
+	// Finds c among the sorted keys of a node. Like Arrays.binarySearch, a missing character
+	// gives (-(insertion point) - 1).
+	private int indexOf(int edges, int count, char c) {
+		if (count <= LINEAR_SCAN_LIMIT) {
+			for (int i = 0; i < count; i++) {
+				char key = keyAt(edges, i);
+				if (key == c) {
+					return i;
+				} else if (key > c) {
+					return -i - 1;
+				}
+			}
+			return -count - 1;
+		}
+		int low = 0, high = count - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			char key = keyAt(edges, middle);
+			if (key < c) {
+				low = middle + 1;
+			} else if (key > c) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -low - 1;
+	}
+
+	// Returns the child of node holding c, or 0 if there is none.
+	private int getChild(int node, char c) {
+		int meta = getInt(node, META);
+		int count = count(meta);
+		if (count == 0) {
+			return 0;
+		}
+		int edges = getInt(node, EDGES);
+		int index = indexOf(edges, count, c);
+		return index >= 0 ? childAt(edges, sizeClass(meta), index) : 0;
+	}
+
+	// Returns the child of node holding c, creating it first if it is not there yet.
+	private int getOrAddChild(int node, char c) {
+		int meta = getInt(node, META);
+		int count = count(meta);
+		int sizeClass = sizeClass(meta);
+		int edges = getInt(node, EDGES);
+		int index = count == 0 ? -1 : indexOf(edges, count, c);
+		if (index >= 0) {
+			return childAt(edges, sizeClass, index);
+		}
+		int position = -index - 1;
+		int child = allocate(NODE_UNITS);
+		putInt(child, META, 0);
+		putInt(child, EDGES, 0);
+
+		if (edges == 0 || count == 1 << sizeClass) {
+			// Move to a list twice the size, leaving a gap at position.
+			int newClass = edges == 0 ? 0 : sizeClass + 1;
+			int larger = allocateEdges(newClass);
+			for (int i = 0; i < count; i++) {
+				int to = i < position ? i : i + 1;
+				putChar(larger, 2 * to, keyAt(edges, i));
+				putInt(larger, handlesOffset(newClass) + 4 * to, childAt(edges, sizeClass, i));
+			}
+			if (edges != 0) {
+				freeEdges(edges, sizeClass);
+			}
+			edges = larger;
+			sizeClass = newClass;
+			putInt(node, EDGES, edges);
+		} else {
+			// Shift the later children up by one to make the gap.
+			for (int i = count - 1; i >= position; i--) {
+				putChar(edges, 2 * (i + 1), keyAt(edges, i));
+				putInt(edges, handlesOffset(sizeClass) + 4 * (i + 1), childAt(edges, sizeClass, i));
+			}
+		}
+		putChar(edges, 2 * position, c);
+		putInt(edges, handlesOffset(sizeClass) + 4 * position, child);
+		putInt(node, META, (count + 1) << 6 | sizeClass << 1 | (meta & 1));
+		return child;
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("the off-heap trie has been closed");
+		}
+	}
+
+	@Override
+	public void add(String s) {
+		checkOpen();
+		int node = root;
+		for (int i = 0; i < s.length(); i++) {
+			node = getOrAddChild(node, s.charAt(i));
+		}
+		int meta = getInt(node, META);
+		if (!isShaded(meta)) {
+			putInt(node, META, meta | 1);
+			size++;
+		}
+	}
+
+	// Reads in a word list, streaming it from the file. Returns the number of words read.
+	public long addFile(String filename) throws FileNotFoundException {
+		long count = 0;
+		try (WordReader reader = new WordReader(filename)) {
+			String word;
+			while ((word = reader.next()) != null) {
+				add(word);
+				count++;
+			}
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return count;
+	}
+
+	// Returns the node reached by s, or 0 if there is none.
+	private int walk(String s) {
+		checkOpen();
+		int node = root;
+		for (int i = 0; i < s.length() && node != 0; i++) {
+			node = getChild(node, s.charAt(i));
+		}
+		return node;
+	}
+
+	@Override
+	public boolean contains(String s) {
+		int node = walk(s);
+		return node != 0 && isShaded(getInt(node, META));
+	}
+
+	@Override
+	public Set<String> autocomplete(String s) {
+		Set<String> result = new HashSet<>();
+		int node = walk(s);
+		if (node != 0) {
+			collect(result, new StringBuilder(s), node);
+		}
+		return result;
+	}
+
+	private void collect(Set<String> result, StringBuilder buffer, int node) {
+		int meta = getInt(node, META);
+		if (isShaded(meta)) {
+			result.add(buffer.toString());
+		}
+		int edges = getInt(node, EDGES);
+		for (int i = 0; i < count(meta); i++) {
+			buffer.append(keyAt(edges, i));
+			collect(result, buffer, childAt(edges, sizeClass(meta), i));
+			buffer.setLength(buffer.length() - 1);
+		}
+	}
+
+	// Returns the words within one insertion, deletion or replacement of s, walking the trie
+	// with one row of the edit distance table per character, as TrieSpellChecker does.
+	@Override
+	public Set<String> closeMatches(String s) {
+		checkOpen();
+		Set<String> result = new HashSet<>();
+		int[] first = new int[s.length() + 1];
+		for (int j = 0; j <= s.length(); j++) {
+			first[j] = j;
+		}
+		if (isShaded(getInt(root, META)) && s.length() <= 1) {
+			result.add("");
+		}
+		closeMatchRecurse(result, s, root, new StringBuilder(), first);
+		return result;
+	}
+
+	private void closeMatchRecurse(Set<String> result, String s, int node, StringBuilder path, int[] previous) {
+		int meta = getInt(node, META);
+		int edges = getInt(node, EDGES);
+		for (int i = 0; i < count(meta); i++) {
+			char letter = keyAt(edges, i);
+			int[] row = new int[s.length() + 1];
+			row[0] = previous[0] + 1;
+			int best = row[0];
+			for (int j = 1; j <= s.length(); j++) {
+				int replace = previous[j - 1] + (s.charAt(j - 1) == letter ? 0 : 1);
+				row[j] = Math.min(replace, Math.min(previous[j] + 1, row[j - 1] + 1));
+				best = Math.min(best, row[j]);
+			}
+			if (best <= 1) {
+				int child = childAt(edges, sizeClass(meta), i);
+				path.append(letter);
+				if (isShaded(getInt(child, META)) && row[s.length()] <= 1) {
+					result.add(path.toString());
+				}
+				closeMatchRecurse(result, s, child, path, row);
+				path.setLength(path.length() - 1);
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	// Returns the bytes of off-heap memory reserved for the trie, and of that, the bytes handed
+	// out to nodes and child lists.
+	public long reservedBytes() {
+		return (long) slabCount * SLAB_UNITS * 4;
+	}
+
+	public long allocatedBytes() {
+		return allocatedBytes;
+	}
+
+	// Releases all of the off-heap memory. Where the JDK allows it (sun.misc.Unsafe.invokeCleaner)
+	// the slabs are freed right away; otherwise they are freed once the collector notices the
+	// buffers are gone.
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		for (int i = 0; i < slabCount; i++) {
+			release(slabs[i]);
+			slabs[i] = null;
+		}
+		slabCount = 0;
+	}
+
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			unsafe = null;
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	private static void release(ByteBuffer buffer) {
+		if (INVOKE_CLEANER != null) {
+			try {
+				INVOKE_CLEANER.invoke(UNSAFE, buffer);
+			} catch (ReflectiveOperationException e) {
+				// left for the collector
+			}
+		}
+	}
+
+	// Returns the heap in use after a full collection, in bytes.
+	private static long liveHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	// Returns the total time, in milliseconds, the collectors have spent so far.
+	private static long gcMillis() {
+		long total = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			total += Math.max(0, collector.getCollectionTime());
+		}
+		return total;
+	}
+
+	// Churns through short-lived garbage with the dictionary live, as a server answering
+	// queries would, then forces full collections, and prints the time spent collecting.
+	private static void measureGc(String name, SpellChecker dictionary, List<String> words) {
+		long before = gcMillis();
+		long start = System.nanoTime();
+		long found = 0;
+		for (int i = 0; i < 2000000; i++) {
+			String word = words.get((int) ((long) i * 7919 % words.size()));
+			found += dictionary.contains(word) ? 1 : 0;
+			found += dictionary.autocomplete(word).size();
+		}
+		long youngMillis = gcMillis() - before;
+		double querySeconds = (System.nanoTime() - start) / 1000000000.0;
+
+		long fullStart = System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+		}
+		double fullMillis = (System.nanoTime() - fullStart) / 1000000.0 / 5;
+		System.out.printf("%-10s queries %.1f s, %d ms collecting during queries, %.1f ms per full collection (%d)%n",
+				name, querySeconds, youngMillis, fullMillis, found);
+	}
+
+	// main method compares the heap used by the on-heap and off-heap tries for the same words,
+	// and the time the collector spends with each of them live
+	// Usage: java -Xmx3g OffHeapTrieSpellChecker [word list] [copies of the list]
+	public static void main(String[] args) throws IOException {
+		String file = args.length > 0 ? args[0] : "wordlist_English.txt";
+		int copies = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		// Make a larger dictionary from numbered copies of the list.
+		List<String> base = WordReader.readAll(file);
+		String[] words = new String[base.size() * copies];
+		for (int c = 0; c < copies; c++) {
+			for (int i = 0; i < base.size(); i++) {
+				words[c * base.size() + i] = c == 0 ? base.get(i) : base.get(i) + c;
+			}
+		}
+		List<String> wordList = Arrays.asList(words);
+		long empty = liveHeap();
+
+		TrieSpellChecker onHeap = new TrieSpellChecker();
+		long start = System.nanoTime();
+		for (String word : words) {
+			onHeap.add(word);
+		}
+		double onHeapSeconds = (System.nanoTime() - start) / 1000000000.0;
+		long onHeapBytes = liveHeap() - empty;
+		System.out.printf("on-heap:  %d words in %.1f s, %.1f MB of heap%n", onHeap.size(), onHeapSeconds,
+				onHeapBytes / (1024.0 * 1024.0));
+		measureGc("on-heap", onHeap, wordList);
+		onHeap = null;
+		empty = liveHeap();
+
+		try (OffHeapTrieSpellChecker offHeap = new OffHeapTrieSpellChecker()) {
+			start = System.nanoTime();
+			for (String word : words) {
+				offHeap.add(word);
+			}
+			double offHeapSeconds = (System.nanoTime() - start) / 1000000000.0;
+			long offHeapBytes = liveHeap() - empty;
+			System.out.printf("off-heap: %d words in %.1f s, %.1f MB of heap, %.1f MB off-heap (%.1f MB reserved)%n",
+					offHeap.size(), offHeapSeconds, offHeapBytes / (1024.0 * 1024.0),
+					offHeap.allocatedBytes() / (1024.0 * 1024.0), offHeap.reservedBytes() / (1024.0 * 1024.0));
+			measureGc("off-heap", offHeap, wordList);
+		}
+	}
+}
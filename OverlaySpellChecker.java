@@ -0,0 +1,392 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// A dictionary layered over a shared base: the words of a frozen TrieSpellChecker, minus this
+// overlay's suppressions, plus its additions. Meant for many customers with small word lists of
+// their own on top of the same large dictionary. The base is never copied. Each overlay keeps
+// its changes in two small tries, created the first time they are needed, so an overlay's memory
+// grows with its own changes rather than with the base, and thousands of them can share one base.
+// Queries walk the base and the two small tries together, one character at a time, so every
+// lookup is still a single pass: contains follows three nodes at once, and autocomplete and
+// closeMatches merge the base's children with the additions' children in alphabetical order.
+// The additions never hold a base word and the suppressions only hold base words, so the three
+// never disagree about a word. As with TrieSpellChecker, an overlay mustn't be changed while it is
+// being queried, but any number of overlays can read the base at the same time.
+
+public class OverlaySpellChecker implements SpellChecker {
+
+	private final TrieSpellChecker base;
+	private TrieSpellChecker additions; // words the base doesn't have, or null if there are none
+	private TrieSpellChecker suppressions; // base words hidden from this overlay, or null
+	private SpellCheckerMetrics metrics; // where traversal counts are reported, or null
+
+	// Creates an overlay with no changes on top of base, which is frozen so it can be shared.
+	public OverlaySpellChecker(TrieSpellChecker base) {
+		base.freeze();
+		this.base = base;
+	}
+
+	// Adds s to this overlay, which either un-hides a base word or records a new one.
+	@Override
+	public void add(String s) {
+		if (base.contains(s)) {
+			if (suppressions != null && suppressions.remove(s) && suppressions.size() == 0) {
+				suppressions = null;
+			}
+		} else {
+			if (additions == null) {
+				additions = new TrieSpellChecker();
+			}
+			additions.add(s);
+		}
+	}
+
+	// Removes s from this overlay, returning false if it wasn't there. Base words are hidden
+	// rather than removed, so other overlays still see them.
+	public boolean remove(String s) {
+		if (base.contains(s)) {
+			if (suppressions == null) {
+				suppressions = new TrieSpellChecker();
+			} else if (suppressions.contains(s)) {
+				return false;
+			}
+			suppressions.add(s);
+			return true;
+		}
+		if (additions != null && additions.remove(s)) {
+			if (additions.size() == 0) {
+				additions = null;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	// Returns the number of words this overlay adds to the base.
+	public int addedCount() {
+		return additions == null ? 0 : additions.size();
+	}
+
+	// Returns the number of base words this overlay hides.
+	public int suppressedCount() {
+		return suppressions == null ? 0 : suppressions.size();
+	}
+
+	@Override
+	public int size() {
+		return base.size() - suppressedCount() + addedCount();
+	}
+
+	@Override
+	public void setMetrics(SpellCheckerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	private void recordNodesVisited(long nodes) {
+		if (metrics != null) {
+			metrics.recordNodesVisited(nodes);
+		}
+	}
+
+	private static TrieSpellChecker.Node root(TrieSpellChecker trie) {
+		return trie == null ? null : trie.root;
+	}
+
+	private static TrieSpellChecker.Node child(TrieSpellChecker.Node node, char c) {
+		return node == null ? null : node.getChild(c);
+	}
+
+	// Whether the path leading to these nodes is a word of the overlay. hidden can only be
+	// shaded where inBase is.
+	private static boolean isWord(TrieSpellChecker.Node inBase, TrieSpellChecker.Node added,
+			TrieSpellChecker.Node hidden) {
+		if (added != null && added.isShaded()) {
+			return true;
+		}
+		return inBase != null && inBase.isShaded() && (hidden == null || !hidden.isShaded());
+	}
+
+	@Override
+	public boolean contains(String s) {
+		TrieSpellChecker.Node inBase = base.root;
+		TrieSpellChecker.Node added = root(additions);
+		TrieSpellChecker.Node hidden = root(suppressions);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			inBase = child(inBase, c);
+			added = child(added, c);
+			if (inBase == null && added == null) {
+				recordNodesVisited(i);
+				return false;
+			}
+			hidden = child(hidden, c);
+		}
+		recordNodesVisited(s.length());
+		return isWord(inBase, added, hidden);
+	}
+
+	// Steps through the children of a base node and an additions node at the same time, in
+	// alphabetical order. A character found in both gives one child with both nodes set, and
+	// the matching suppressions node (if any) comes along with the base node.
+	private static final class Children {
+		private final TrieSpellChecker.Node inBase;
+		private final TrieSpellChecker.Node added;
+		private final TrieSpellChecker.Node hidden;
+		private final int baseCount;
+		private final int addedCount;
+		private int i;
+		private int j;
+
+		// The current child, once next has returned true.
+		private char letter;
+		private TrieSpellChecker.Node nextBase;
+		private TrieSpellChecker.Node nextAdded;
+		private TrieSpellChecker.Node nextHidden;
+
+		public Children(TrieSpellChecker.Node inBase, TrieSpellChecker.Node added, TrieSpellChecker.Node hidden) {
+			this.inBase = inBase;
+			this.added = added;
+			this.hidden = hidden;
+			baseCount = inBase == null ? 0 : inBase.childCount();
+			addedCount = added == null ? 0 : added.childCount();
+		}
+
+		public int count() {
+			return baseCount + addedCount;
+		}
+
+		public boolean next() {
+			nextBase = null;
+			nextAdded = null;
+			if (i < baseCount && (j == addedCount || inBase.keyAt(i) <= added.keyAt(j))) {
+				letter = inBase.keyAt(i);
+				nextBase = inBase.childAt(i++);
+				if (j < addedCount && added.keyAt(j) == letter) {
+					nextAdded = added.childAt(j++);
+				}
+			} else if (j < addedCount) {
+				letter = added.keyAt(j);
+				nextAdded = added.childAt(j++);
+			} else {
+				return false;
+			}
+			nextHidden = nextBase == null ? null : child(hidden, letter);
+			return true;
+		}
+
+		public boolean hasGrandchildren() {
+			return (nextBase != null && nextBase.childCount() > 0) || (nextAdded != null && nextAdded.childCount() > 0);
+		}
+	}
+
+	@Override
+	public Set<String> autocomplete(String s) {
+		Set<String> result = new HashSet<>();
+		TrieSpellChecker.Node inBase = base.root;
+		TrieSpellChecker.Node added = root(additions);
+		TrieSpellChecker.Node hidden = root(suppressions);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			inBase = child(inBase, c);
+			added = child(added, c);
+			if (inBase == null && added == null) {
+				recordNodesVisited(i);
+				return result;
+			}
+			hidden = child(hidden, c);
+		}
+		if (isWord(inBase, added, hidden)) {
+			result.add(s);
+		}
+		int visited = collect(result, new StringBuilder(s), inBase, added, hidden);
+		recordNodesVisited(s.length() + visited);
+		return result;
+	}
+
+	// Adds every word below the given nodes to result, where path spells the way to them.
+	// Returns the number of nodes visited.
+	private int collect(Set<String> result, StringBuilder path, TrieSpellChecker.Node inBase,
+			TrieSpellChecker.Node added, TrieSpellChecker.Node hidden) {
+		Children children = new Children(inBase, added, hidden);
+		int visited = 0;
+		while (children.next()) {
+			visited++;
+			path.append(children.letter);
+			if (isWord(children.nextBase, children.nextAdded, children.nextHidden)) {
+				result.add(path.toString());
+			}
+			if (children.hasGrandchildren()) {
+				visited += collect(result, path, children.nextBase, children.nextAdded, children.nextHidden);
+			}
+			path.setLength(path.length() - 1);
+		}
+		return visited;
+	}
+
+	@Override
+	public Set<String> closeMatches(String s) {
+		return closeMatches(s, 1, false);
+	}
+
+	// Returns every word of the overlay within maxDistance (1 to 3) edits of s, the same way as
+	// TrieSpellChecker.closeMatches, walking the merged children instead of a single trie.
+	public Set<String> closeMatches(String s, int maxDistance, boolean transpositions) {
+		if (maxDistance < 1 || maxDistance > 3) {
+			throw new IllegalArgumentException("maxDistance must be between 1 and 3: " + maxDistance);
+		}
+		Set<String> result = new HashSet<>();
+		int[][] rows = new int[s.length() + maxDistance + 2][s.length() + 1];
+		char[] path = new char[s.length() + maxDistance + 1];
+		for (int j = 0; j <= s.length(); j++) {
+			rows[0][j] = j;
+		}
+		TrieSpellChecker.Node addedRoot = root(additions);
+		TrieSpellChecker.Node hiddenRoot = root(suppressions);
+		if (isWord(base.root, addedRoot, hiddenRoot) && s.length() <= maxDistance) {
+			result.add("");
+		}
+		long[] counts = new long[2]; // nodes visited and candidates tried, for the metrics
+		closeMatchRecurse(result, s, maxDistance, transpositions, base.root, addedRoot, hiddenRoot, 0, path, rows,
+				counts);
+		if (metrics != null) {
+			metrics.recordNodesVisited(counts[0]);
+			metrics.recordCandidates(counts[1]);
+		}
+		return result;
+	}
+
+	private void closeMatchRecurse(Set<String> a, String s, int maxDistance, boolean transpositions,
+			TrieSpellChecker.Node inBase, TrieSpellChecker.Node added, TrieSpellChecker.Node hidden, int depth,
+			char[] path, int[][] rows, long[] counts) {
+		int[] previous = rows[depth];
+		int[] row = rows[depth + 1];
+		Children children = new Children(inBase, added, hidden);
+		counts[1] += children.count();
+
+		while (children.next()) {
+			char letter = children.letter;
+			row[0] = depth + 1;
+			int best = row[0];
+			for (int j = 1; j <= s.length(); j++) {
+				int replace = previous[j - 1] + (s.charAt(j - 1) == letter ? 0 : 1);
+				int distance = Math.min(replace, Math.min(previous[j] + 1, row[j - 1] + 1));
+				if (transpositions && depth > 0 && j > 1 && letter == s.charAt(j - 2)
+						&& path[depth - 1] == s.charAt(j - 1)) {
+					distance = Math.min(distance, rows[depth - 1][j - 2] + 1);
+				}
+				row[j] = distance;
+				best = Math.min(best, distance);
+			}
+
+			if (best <= maxDistance) {
+				counts[0]++;
+				path[depth] = letter;
+				if (row[s.length()] <= maxDistance
+						&& isWord(children.nextBase, children.nextAdded, children.nextHidden)) {
+					a.add(new String(path, 0, depth + 1));
+				}
+				if (children.hasGrandchildren()) {
+					closeMatchRecurse(a, s, maxDistance, transpositions, children.nextBase, children.nextAdded,
+							children.nextHidden, depth + 1, path, rows, counts);
+				}
+			}
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	// main method checks overlays against plain tries holding the same words, then measures the
+	// memory of a few thousand overlays against that of one full trie
+	// Usage: java -Xmx2g OverlaySpellChecker [word list]
+	public static void main(String[] args) throws IOException {
+		String file = args.length > 0 ? args[0] : "wordlist_English.txt";
+		List<String> words = WordReader.readAll(file);
+		long before = usedHeap();
+		TrieSpellChecker base = new TrieSpellChecker();
+		base.addFile(file);
+		long baseBytes = usedHeap() - before;
+
+		// Each tenant adds some product names and misspellings and hides some base words.
+		Random random = new Random(42);
+		int mismatches = 0;
+		for (int tenant = 0; tenant < 20; tenant++) {
+			OverlaySpellChecker overlay = new OverlaySpellChecker(base);
+			Set<String> expected = new HashSet<>(words);
+			List<String> changed = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				String word = words.get(random.nextInt(words.size()));
+				String added = random.nextBoolean() ? word + "co" : "x" + word.substring(1);
+				overlay.add(added);
+				expected.add(added);
+				overlay.remove(word);
+				expected.remove(word);
+				changed.add(added);
+				changed.add(word);
+			}
+			TrieSpellChecker plain = new TrieSpellChecker();
+			for (String word : expected) {
+				plain.add(word);
+			}
+			if (overlay.size() != plain.size()) {
+				mismatches++;
+			}
+			for (String word : changed) {
+				String prefix = word.substring(0, Math.min(word.length(), 3));
+				String typo = word.length() > 1 ? word.substring(1) : word + "e";
+				if (overlay.contains(word) != plain.contains(word)
+						|| !overlay.autocomplete(prefix).equals(plain.autocomplete(prefix))
+						|| !overlay.closeMatches(typo).equals(plain.closeMatches(typo))
+						|| !overlay.closeMatches(word, 2, true).equals(plain.closeMatches(word, 2, true))) {
+					mismatches++;
+				}
+			}
+		}
+		System.out.println("mismatches against plain tries: " + mismatches);
+
+		// Memory: a few thousand tenants, each with 100 additions and 20 suppressions.
+		int tenants = 5000;
+		before = usedHeap();
+		List<OverlaySpellChecker> overlays = new ArrayList<>();
+		for (int tenant = 0; tenant < tenants; tenant++) {
+			OverlaySpellChecker overlay = new OverlaySpellChecker(base);
+			for (int i = 0; i < 100; i++) {
+				overlay.add("tenant" + tenant + words.get(random.nextInt(words.size())));
+			}
+			for (int i = 0; i < 20; i++) {
+				overlay.remove(words.get(random.nextInt(words.size())));
+			}
+			overlays.add(overlay);
+		}
+		long overlayBytes = usedHeap() - before;
+		System.out.printf("base trie: %.1f MB; %d overlays: %.1f MB in all, %.1f KB each (a full trie each would be %.1f GB)%n",
+				baseBytes / 1048576.0, tenants, overlayBytes / 1048576.0, overlayBytes / 1024.0 / tenants,
+				baseBytes * (double) tenants / (1L << 30));
+
+		// Speed: lookups through an overlay against the base alone.
+		OverlaySpellChecker overlay = overlays.get(0);
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			int found = 0;
+			for (String word : words) {
+				found += base.contains(word) ? 1 : 0;
+			}
+			double baseNanos = (double) (System.nanoTime() - start) / words.size();
+			start = System.nanoTime();
+			for (String word : words) {
+				found += overlay.contains(word) ? 1 : 0;
+			}
+			double overlayNanos = (double) (System.nanoTime() - start) / words.size();
+			System.out.printf("contains: base %.0f ns, overlay %.0f ns (%d found)%n", baseNanos, overlayNanos, found);
+		}
+	}
+}
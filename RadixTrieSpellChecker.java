@@ -0,0 +1,390 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// A path-compressed (radix, or Patricia) trie. Most deep nodes of a plain trie have exactly one
+// child, so here each edge holds a whole run of characters instead of one, and a chain of
+// single-child nodes becomes a single node. Labels aren't separate strings: every edge is a
+// slice (labelStart, labelLength) of one shared char[] pool, and splitting an edge only re-slices
+// it, so the pool only grows by the new suffix of each added word.
+// Lookups compare a whole label against the query at once with Arrays.mismatch or Arrays.equals
+// over the two ranges, so a word costs one hop per branching point rather than one per character.
+// Like TrieSpellChecker, the trie can be read by many threads at once, but mustn't be changed while
+// it is being read.
+
+public class RadixTrieSpellChecker implements SpellChecker {
+
+	private char[] pool = new char[1024]; // every edge label, as slices
+	private int poolSize;
+	private final Node root = new Node(0, 0);
+	private int size; // number of words
+	private int nodeCount; // not counting the root
+	private SpellCheckerMetrics metrics; // where traversal counts are reported, or null
+
+	// A node and the edge leading into it. Children are kept sorted by the first character of
+	// their labels, which are all different.
+	private static final class Node {
+		private static final int LINEAR_SCAN_LIMIT = 8;
+		private static final char[] NO_KEYS = new char[0];
+		private static final Node[] NO_KIDS = new Node[0];
+
+		private int labelStart;
+		private int labelLength;
+		private boolean isShaded;
+		private char[] keys = NO_KEYS; // first character of each child's label
+		private Node[] kids = NO_KIDS;
+		private int childCount;
+
+		public Node(int labelStart, int labelLength) {
+			this.labelStart = labelStart;
+			this.labelLength = labelLength;
+		}
+
+		// Finds c among the sorted keys. Like Arrays.binarySearch, a missing character gives
+		// (-(insertion point) - 1).
+		private int indexOf(char c) {
+			if (childCount <= LINEAR_SCAN_LIMIT) {
+				for (int i = 0; i < childCount; i++) {
+					if (keys[i] == c) {
+						return i;
+					} else if (keys[i] > c) {
+						return -i - 1;
+					}
+				}
+				return -childCount - 1;
+			}
+			return Arrays.binarySearch(keys, 0, childCount, c);
+		}
+
+		private Node getChild(char c) {
+			int index = indexOf(c);
+			return index >= 0 ? kids[index] : null;
+		}
+
+		private void insertChild(int position, char key, Node child) {
+			if (childCount == keys.length) {
+				int capacity = Math.max(2, childCount * 2);
+				keys = Arrays.copyOf(keys, capacity);
+				kids = Arrays.copyOf(kids, capacity);
+			}
+			System.arraycopy(keys, position, keys, position + 1, childCount - position);
+			System.arraycopy(kids, position, kids, position + 1, childCount - position);
+			keys[position] = key;
+			kids[position] = child;
+			childCount++;
+		}
+	}
+
+	// Copies chars[from, to) to the end of the pool and returns where it starts.
+	private int appendToPool(char[] chars, int from, int to) {
+		int length = to - from;
+		if (poolSize + length > pool.length) {
+			pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+		}
+		System.arraycopy(chars, from, pool, poolSize, length);
+		poolSize += length;
+		return poolSize - length;
+	}
+
+	@Override
+	public void add(String s) {
+		char[] chars = s.toCharArray();
+		Node node = root;
+		int i = 0;
+		while (i < chars.length) {
+			int index = node.indexOf(chars[i]);
+			if (index < 0) {
+				// Nothing here starts with this character, so the rest of the word is one new edge.
+				Node leaf = new Node(appendToPool(chars, i, chars.length), chars.length - i);
+				node.insertChild(-index - 1, chars[i], leaf);
+				nodeCount++;
+				node = leaf;
+				break;
+			}
+			Node child = node.kids[index];
+			int end = Math.min(child.labelLength, chars.length - i);
+			int common = Arrays.mismatch(pool, child.labelStart, child.labelStart + child.labelLength, chars, i, i + end);
+			if (common < 0) {
+				// The whole label matches.
+				node = child;
+				i += child.labelLength;
+				continue;
+			}
+			// The word leaves the label part way along (or ends inside it), so split the edge:
+			// a new node takes the shared part, and the old child keeps the rest of its label.
+			Node middle = new Node(child.labelStart, common);
+			child.labelStart += common;
+			child.labelLength -= common;
+			middle.insertChild(0, pool[child.labelStart], child);
+			node.kids[index] = middle;
+			nodeCount++;
+			node = middle;
+			i += common;
+		}
+		if (!node.isShaded) {
+			node.isShaded = true;
+			size++;
+		}
+	}
+
+	// Reads in a word list and adds every word. Returns the number of words read.
+	public long addFile(String filename) throws FileNotFoundException {
+		long count = 0;
+		try (WordReader reader = new WordReader(filename)) {
+			String word;
+			while ((word = reader.next()) != null) {
+				add(word);
+				count++;
+			}
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return count;
+	}
+
+	@Override
+	public boolean contains(String s) {
+		char[] chars = s.toCharArray();
+		Node node = root;
+		int i = 0;
+		int hops = 0;
+		while (i < chars.length) {
+			node = node.getChild(chars[i]);
+			hops++;
+			if (node == null || node.labelLength > chars.length - i || !Arrays.equals(pool, node.labelStart,
+					node.labelStart + node.labelLength, chars, i, i + node.labelLength)) {
+				recordNodesVisited(hops);
+				return false;
+			}
+			i += node.labelLength;
+		}
+		recordNodesVisited(hops);
+		return node.isShaded;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	// Returns the number of nodes, not including the root.
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	// Returns the number of label characters in the pool.
+	public int labelChars() {
+		return poolSize;
+	}
+
+	// Reports the nodes visited by each contains, autocomplete and closeMatches call, and the
+	// candidates tried by closeMatches, to metrics. Set this before the trie is queried.
+	@Override
+	public void setMetrics(SpellCheckerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	private void recordNodesVisited(long nodes) {
+		if (metrics != null) {
+			metrics.recordNodesVisited(nodes);
+		}
+	}
+
+	@Override
+	public Set<String> autocomplete(String s) {
+		Set<String> result = new HashSet<>();
+		char[] chars = s.toCharArray();
+		Node node = root;
+		int i = 0;
+		int hops = 0;
+		StringBuilder path = new StringBuilder(s);
+		while (i < chars.length) {
+			node = node.getChild(chars[i]);
+			hops++;
+			if (node == null) {
+				recordNodesVisited(hops);
+				return result;
+			}
+			// The prefix may end part way along the label, and then every completion carries on
+			// with the rest of it.
+			int compared = Math.min(node.labelLength, chars.length - i);
+			if (!Arrays.equals(pool, node.labelStart, node.labelStart + compared, chars, i, i + compared)) {
+				recordNodesVisited(hops);
+				return result;
+			}
+			path.append(pool, node.labelStart + compared, node.labelLength - compared);
+			i += compared;
+		}
+		if (node.isShaded) {
+			result.add(path.toString());
+		}
+		hops += collect(result, path, node);
+		recordNodesVisited(hops);
+		return result;
+	}
+
+	// Adds every word below node to result, where path spells the way to node. Returns the
+	// number of nodes visited.
+	private int collect(Set<String> result, StringBuilder path, Node node) {
+		int visited = node.childCount;
+		for (int k = 0; k < node.childCount; k++) {
+			Node child = node.kids[k];
+			path.append(pool, child.labelStart, child.labelLength);
+			if (child.isShaded) {
+				result.add(path.toString());
+			}
+			if (child.childCount > 0) {
+				visited += collect(result, path, child);
+			}
+			path.setLength(path.length() - child.labelLength);
+		}
+		return visited;
+	}
+
+	@Override
+	public Set<String> closeMatches(String s) {
+		return closeMatches(s, 1, false);
+	}
+
+	// Returns every word within maxDistance (1 to 3) insertions, deletions or replacements of s,
+	// also counting swaps of neighbouring letters if transpositions is true. This is the same walk
+	// as TrieSpellChecker.closeMatches, filling in one row of the edit distance table per
+	// character, except that the characters of a label are taken one after another without a
+	// hop between them, and a label is abandoned as soon as a row is entirely over maxDistance.
+	public Set<String> closeMatches(String s, int maxDistance, boolean transpositions) {
+		if (maxDistance < 1 || maxDistance > 3) {
+			throw new IllegalArgumentException("maxDistance must be between 1 and 3: " + maxDistance);
+		}
+		Set<String> result = new HashSet<>();
+		int[][] rows = new int[s.length() + maxDistance + 2][s.length() + 1];
+		char[] path = new char[s.length() + maxDistance + 1];
+		for (int j = 0; j <= s.length(); j++) {
+			rows[0][j] = j;
+		}
+		if (root.isShaded && s.length() <= maxDistance) {
+			result.add("");
+		}
+		long[] counts = new long[2]; // nodes visited and candidates tried, for the metrics
+		closeMatchRecurse(result, s, maxDistance, transpositions, root, 0, path, rows, counts);
+		if (metrics != null) {
+			metrics.recordNodesVisited(counts[0]);
+			metrics.recordCandidates(counts[1]);
+		}
+		return result;
+	}
+
+	// Tries each child of node, which is reached by the first depth characters in path and whose
+	// row of the edit distance table is rows[depth].
+	private void closeMatchRecurse(Set<String> a, String s, int maxDistance, boolean transpositions, Node node,
+			int depth, char[] path, int[][] rows, long[] counts) {
+		counts[1] += node.childCount;
+		for (int k = 0; k < node.childCount; k++) {
+			Node child = node.kids[k];
+			int end = depth;
+			boolean close = true;
+			for (int c = 0; c < child.labelLength; c++) {
+				char letter = pool[child.labelStart + c];
+				if (fillRow(s, letter, end, path, rows, transpositions) > maxDistance) {
+					close = false;
+					break;
+				}
+				path[end++] = letter;
+			}
+			if (!close) {
+				continue;
+			}
+			counts[0]++;
+			if (child.isShaded && rows[end][s.length()] <= maxDistance) {
+				a.add(new String(path, 0, end));
+			}
+			if (child.childCount > 0) {
+				closeMatchRecurse(a, s, maxDistance, transpositions, child, end, path, rows, counts);
+			}
+		}
+	}
+
+	// Fills in rows[depth + 1] for the path so far plus letter, and returns its smallest entry.
+	private static int fillRow(String s, char letter, int depth, char[] path, int[][] rows, boolean transpositions) {
+		int[] previous = rows[depth];
+		int[] row = rows[depth + 1];
+		row[0] = depth + 1;
+		int best = row[0];
+		for (int j = 1; j <= s.length(); j++) {
+			int replace = previous[j - 1] + (s.charAt(j - 1) == letter ? 0 : 1);
+			int distance = Math.min(replace, Math.min(previous[j] + 1, row[j - 1] + 1));
+			if (transpositions && depth > 0 && j > 1 && letter == s.charAt(j - 2)
+					&& path[depth - 1] == s.charAt(j - 1)) {
+				distance = Math.min(distance, rows[depth - 1][j - 2] + 1);
+			}
+			row[j] = distance;
+			best = Math.min(best, distance);
+		}
+		return best;
+	}
+
+	// main method checks the radix trie against TrieSpellChecker and compares their node counts,
+	// hops per lookup and speed
+	// Usage: java RadixTrieSpellChecker [word list]
+	public static void main(String[] args) throws IOException {
+		String file = args.length > 0 ? args[0] : "wordlist_English.txt";
+		List<String> words = WordReader.readAll(file);
+		TrieSpellChecker trie = new TrieSpellChecker();
+		trie.addFile(file);
+		RadixTrieSpellChecker radix = new RadixTrieSpellChecker();
+		radix.addFile(file);
+
+		Random random = new Random(42);
+		List<String> queries = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			String word = words.get(random.nextInt(words.size()));
+			queries.add(i % 2 == 0 ? word : word.substring(0, random.nextInt(word.length() + 1)) + "e");
+		}
+		int mismatches = radix.size() == trie.size() ? 0 : 1;
+		for (String query : queries.subList(0, 2000)) {
+			String prefix = query.substring(0, Math.min(query.length(), 3));
+			if (radix.contains(query) != trie.contains(query)
+					|| !radix.autocomplete(prefix).equals(trie.autocomplete(prefix))
+					|| !radix.closeMatches(query).equals(trie.closeMatches(query))
+					|| !radix.closeMatches(query, 2, true).equals(trie.closeMatches(query, 2, true))) {
+				mismatches++;
+			}
+		}
+		System.out.println(radix.size() + " words, " + mismatches + " mismatches against TrieSpellChecker");
+		System.out.println("nodes: trie " + trie.nodeCount() + ", radix " + radix.nodeCount() + " (labels hold "
+				+ radix.labelChars() + " chars)");
+
+		for (SpellChecker checker : new SpellChecker[] { trie, radix }) {
+			SpellCheckerMetrics metrics = new SpellCheckerMetrics();
+			checker.setMetrics(metrics);
+			double containsNanos = 0, closeNanos = 0;
+			for (int round = 0; round < 3; round++) { // the first rounds are warmup
+				metrics.reset();
+				long start = System.nanoTime();
+				int found = 0;
+				for (String query : queries) {
+					found += checker.contains(query) ? 1 : 0;
+				}
+				containsNanos = (double) (System.nanoTime() - start) / queries.size();
+				double hops = metrics.snapshot().nodesVisitedPerQuery();
+				start = System.nanoTime();
+				for (String query : queries.subList(0, 2000)) {
+					found += checker.closeMatches(query).size();
+				}
+				closeNanos = (double) (System.nanoTime() - start) / 2000;
+				if (round == 2) {
+					System.out.printf("%s: contains %.0f ns, %.1f hops; closeMatches %.1f us (%d found)%n",
+							checker.getClass().getSimpleName(), containsNanos, hops, closeNanos / 1000, found);
+				}
+			}
+			checker.setMetrics(null);
+		}
+	}
+}
@@ -0,0 +1,216 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+// Drives a SpellCheckServer over loopback and reports its throughput and latency.
+// Each connection keeps depth requests outstanding at all times: a sender writes requests
+// whenever it has a free slot, and a receiver times each answer from when its request was
+// written. The mix is 90% contains (half of them misspelled), 8% autocomplete on a short prefix
+// and 2% closeMatches on a misspelled word. Answers that arrive in the first seconds of the run
+// are left out of the figures while the JIT warms up.
+
+public class SpellCheckLoadGenerator {
+
+	private static final double WARMUP_SECONDS = 2;
+
+	private final String host;
+	private final int port;
+	private final List<String> words;
+
+	public SpellCheckLoadGenerator(String host, int port, List<String> words) {
+		this.host = host;
+		this.port = port;
+		this.words = words;
+	}
+
+	// The latencies in nanoseconds of the answers one connection received after warmup.
+	private static final class Latencies {
+		private long[] nanos = new long[1 << 16];
+		private int count;
+
+		private void add(long latency) {
+			if (count == nanos.length) {
+				nanos = Arrays.copyOf(nanos, count * 2);
+			}
+			nanos[count++] = latency;
+		}
+	}
+
+	// One pipelined connection to the server.
+	private final class Client {
+		private final Socket socket;
+		private final DataOutputStream out;
+		private final DataInputStream in;
+		private final Semaphore slots;
+		private final int depth;
+		private final Map<Integer, Long> sentAt = new ConcurrentHashMap<>(); // by id, until answered
+		private final Random random;
+		private final Latencies latencies = new Latencies();
+
+		public Client(int depth, long seed) throws IOException {
+			socket = new Socket(host, port);
+			socket.setTcpNoDelay(true);
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+			this.depth = depth;
+			slots = new Semaphore(depth);
+			random = new Random(seed);
+		}
+
+		private void send(long endNanos) {
+			try {
+				int unflushed = 0;
+				for (int id = 0; System.nanoTime() < endNanos; id++) {
+					if (!slots.tryAcquire()) {
+						out.flush(); // everything written so far has to reach the server first
+						unflushed = 0;
+						slots.acquire();
+					}
+					String word = words.get(random.nextInt(words.size()));
+					int choice = random.nextInt(100);
+					byte operation;
+					if (choice < 90) {
+						operation = SpellCheckServer.CONTAINS;
+						if (choice % 2 == 0) {
+							word = misspell(word);
+						}
+					} else if (choice < 98) {
+						operation = SpellCheckServer.AUTOCOMPLETE;
+						word = word.substring(0, Math.min(word.length(), 4));
+					} else {
+						operation = SpellCheckServer.CLOSE_MATCHES;
+						word = misspell(word);
+					}
+					byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+					sentAt.put(id, System.nanoTime());
+					out.writeInt(5 + bytes.length);
+					out.writeByte(operation);
+					out.writeInt(id);
+					out.write(bytes);
+					if (++unflushed == depth / 2) {
+						out.flush();
+						unflushed = 0;
+					}
+				}
+				out.flush();
+				slots.acquire(depth); // wait for every answer before hanging up
+				socket.shutdownOutput();
+			} catch (IOException | InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private void receive(long warmupEndNanos) {
+			try {
+				while (true) {
+					int length = in.readInt();
+					int id = in.readInt();
+					in.skipNBytes(length - 4);
+					long now = System.nanoTime();
+					long sent = sentAt.remove(id); // answers come back out of order, so match them by id
+					if (now > warmupEndNanos) {
+						latencies.add(now - sent);
+					}
+					slots.release();
+				}
+			} catch (IOException e) {
+				// the server closed the connection after the sender hung up
+			}
+		}
+
+		private String misspell(String word) {
+			if (word.isEmpty()) {
+				return word;
+			}
+			char[] chars = word.toCharArray();
+			chars[random.nextInt(chars.length)] = (char) ('a' + random.nextInt(26));
+			return new String(chars);
+		}
+	}
+
+	// Runs connections clients, each with depth requests outstanding, for the given number of
+	// seconds (warmup included) and prints the throughput and latency percentiles.
+	public void run(int connections, int depth, double seconds) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		long warmupEnd = start + (long) (WARMUP_SECONDS * 1e9);
+		long end = start + (long) (seconds * 1e9);
+		List<Client> clients = new ArrayList<>();
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < connections; i++) {
+			Client client = new Client(depth, i);
+			clients.add(client);
+			threads.add(new Thread(() -> client.send(end)));
+			threads.add(new Thread(() -> client.receive(warmupEnd)));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		int total = 0;
+		for (Client client : clients) {
+			total += client.latencies.count;
+			client.socket.close();
+		}
+		long[] all = new long[total];
+		int filled = 0;
+		for (Client client : clients) {
+			System.arraycopy(client.latencies.nanos, 0, all, filled, client.latencies.count);
+			filled += client.latencies.count;
+		}
+		Arrays.sort(all);
+		double measuredSeconds = seconds - WARMUP_SECONDS;
+		System.out.printf("%d connections x %d deep: %.0f requests/s, p50 %.0f us, p99 %.0f us, p99.9 %.0f us, max %.0f us%n",
+				connections, depth, total / measuredSeconds, percentile(all, 0.50) / 1000.0,
+				percentile(all, 0.99) / 1000.0, percentile(all, 0.999) / 1000.0,
+				total == 0 ? 0 : all[total - 1] / 1000.0);
+	}
+
+	private static double percentile(long[] sorted, double fraction) {
+		return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, (long) (sorted.length * fraction))];
+	}
+
+	// main method starts a server on a loopback port (or uses one already running) and loads it
+	// at a few pipeline depths
+	// Usage: java SpellCheckLoadGenerator [word list] [connections] [seconds] [port of a running server]
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String file = args.length > 0 ? args[0] : "wordlist_English.txt";
+		int connections = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+		List<String> words = WordReader.readAll(file);
+
+		SpellCheckServer server = null;
+		int port;
+		if (args.length > 3) {
+			port = Integer.parseInt(args[3]);
+		} else {
+			TrieSpellChecker dictionary = new TrieSpellChecker();
+			dictionary.addFile(file);
+			server = new SpellCheckServer(dictionary, 0);
+			port = server.getPort();
+		}
+		SpellCheckLoadGenerator generator = new SpellCheckLoadGenerator(
+				InetAddress.getLoopbackAddress().getHostAddress(), port, words);
+		for (int depth : new int[] { 1, 8, 64 }) {
+			generator.run(connections, depth, seconds);
+		}
+		if (server != null) {
+			System.out.printf("%.1f contains lookups per batch%n", server.averageBatchSize());
+			server.close();
+		}
+	}
+}
@@ -0,0 +1,368 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Serves one TrieSpellChecker over TCP, so services can share a single loaded dictionary
+// instead of each loading their own.
+//
+// Every message is an int length followed by that many bytes. A request is a byte operation
+// (CONTAINS, AUTOCOMPLETE or CLOSE_MATCHES), an int id chosen by the client, and the word in
+// UTF-8. A response is the request's id, a status byte, and then for OK either a byte (1 if
+// contains found the word) or an int count and that many words written with writeUTF; for
+// ERROR a message written with writeUTF. autocomplete answers with at most MAX_COMPLETIONS
+// words, the first ones in alphabetical order, so a short prefix can't fill a message with the
+// whole dictionary.
+//
+// Clients can send many requests without waiting for the answers (pipelining), and the answers
+// come back as they are ready, not necessarily in order, matched up by id. Each connection is
+// read and written on its own virtual threads where the JDK has them. contains requests from
+// every connection go into one queue, and a batcher thread takes whatever has queued up and
+// answers it with a single containsAll call; autocomplete and closeMatches run on a pool with
+// one thread per processor. A connection may only have MAX_IN_FLIGHT requests unanswered, and
+// the contains queue is bounded, so when the server falls behind it simply stops reading, and
+// TCP pushes the back pressure onto the clients.
+
+public class SpellCheckServer implements Closeable {
+
+	static final byte CONTAINS = 1;
+	static final byte AUTOCOMPLETE = 2;
+	static final byte CLOSE_MATCHES = 3;
+	static final byte OK = 0;
+	static final byte ERROR = 1;
+	static final int MAX_MESSAGE = 64 * 1024;
+	static final int MAX_COMPLETIONS = 1000;
+
+	private static final int MAX_IN_FLIGHT = 256; // unanswered requests per connection
+	private static final int MAX_BATCH = 1024;
+	private static final int QUEUE_CAPACITY = 16384;
+	private static final byte[] CLOSED = new byte[0]; // tells a connection's writer to stop
+
+	private final TrieSpellChecker dictionary;
+	private final ServerSocket serverSocket;
+	private final ExecutorService connections = VirtualThreads.newPerTaskExecutor();
+	private final ExecutorService workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	private final BlockingQueue<Lookup> lookups = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private final Set<Connection> open = ConcurrentHashMap.newKeySet();
+	private final Thread batcher;
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder batchedLookups = new LongAdder();
+	private volatile boolean running = true;
+
+	// Starts serving dictionary on the given port of the loopback address (0 picks a free port).
+	// The dictionary mustn't be changed while the server is running.
+	public SpellCheckServer(TrieSpellChecker dictionary, int port) throws IOException {
+		this(dictionary, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+	}
+
+	public SpellCheckServer(TrieSpellChecker dictionary, InetSocketAddress address) throws IOException {
+		this.dictionary = dictionary;
+		serverSocket = new ServerSocket();
+		serverSocket.bind(address, 1024);
+		batcher = new Thread(this::batchLoop, "SpellCheckServer batcher");
+		batcher.setDaemon(true);
+		batcher.start();
+		connections.execute(this::acceptLoop);
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	// Returns the average number of contains requests answered per containsAll call.
+	public double averageBatchSize() {
+		long count = batches.sum();
+		return count == 0 ? 0 : (double) batchedLookups.sum() / count;
+	}
+
+	public long requests() {
+		return requests.sum();
+	}
+
+	private void acceptLoop() {
+		while (running) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				Connection connection = new Connection(socket);
+				open.add(connection);
+				connections.execute(connection::readLoop);
+				connections.execute(connection::writeLoop);
+			} catch (IOException e) {
+				if (running) {
+					continue; // a failed accept only affects that client
+				}
+				return;
+			}
+		}
+	}
+
+	// A contains request waiting for the batcher.
+	private static final class Lookup {
+		private final Connection connection;
+		private final int id;
+		private final String word;
+
+		public Lookup(Connection connection, int id, String word) {
+			this.connection = connection;
+			this.id = id;
+			this.word = word;
+		}
+	}
+
+	// Takes everything that has queued up (up to MAX_BATCH) and answers it with one containsAll.
+	private void batchLoop() {
+		List<Lookup> batch = new ArrayList<>(MAX_BATCH);
+		while (running) {
+			try {
+				Lookup first = lookups.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+			} catch (InterruptedException e) {
+				return;
+			}
+			lookups.drainTo(batch, MAX_BATCH - 1);
+			int answered = 0;
+			try {
+				String[] words = new String[batch.size()];
+				for (int i = 0; i < words.length; i++) {
+					words[i] = batch.get(i).word;
+				}
+				BitSet found = dictionary.containsAll(words);
+				for (; answered < words.length; answered++) {
+					Lookup lookup = batch.get(answered);
+					lookup.connection.respond(found(lookup.id, found.get(answered)));
+				}
+				batches.increment();
+				batchedLookups.add(words.length);
+			} catch (RuntimeException e) {
+				fail(batch.subList(answered, batch.size()), e);
+			} catch (Error e) {
+				fail(batch.subList(answered, batch.size()), e);
+				throw e;
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	// Answers the lookups a failed batch didn't get to with an ERROR, so the batcher can carry on
+	// without leaving clients waiting or holding on to their in-flight permits.
+	private static void fail(List<Lookup> unanswered, Throwable failure) {
+		for (Lookup lookup : unanswered) {
+			lookup.connection.respond(error(lookup.id, failure.toString()));
+		}
+	}
+
+	private static byte[] found(int id, boolean found) {
+		return new byte[] { 0, 0, 0, 6, (byte) (id >>> 24), (byte) (id >>> 16), (byte) (id >>> 8), (byte) id, OK,
+				(byte) (found ? 1 : 0) };
+	}
+
+	private static byte[] words(int id, Collection<String> words) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		try {
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0); // the length, filled in below
+			out.writeInt(id);
+			out.writeByte(OK);
+			out.writeInt(words.size());
+			for (String word : words) {
+				out.writeUTF(word);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // can't happen in memory
+		}
+		return withLength(bytes.toByteArray());
+	}
+
+	private static byte[] error(int id, String message) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		try {
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0);
+			out.writeInt(id);
+			out.writeByte(ERROR);
+			out.writeUTF(message);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return withLength(bytes.toByteArray());
+	}
+
+	private static byte[] withLength(byte[] message) {
+		int length = message.length - 4;
+		message[0] = (byte) (length >>> 24);
+		message[1] = (byte) (length >>> 16);
+		message[2] = (byte) (length >>> 8);
+		message[3] = (byte) length;
+		return message;
+	}
+
+	// One client connection: a reader that hands requests out, and a writer that sends the
+	// answers back in whatever order they are ready.
+	private final class Connection {
+		private final Socket socket;
+		private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+		private final BlockingQueue<byte[]> responses = new LinkedBlockingQueue<>();
+
+		public Connection(Socket socket) {
+			this.socket = socket;
+		}
+
+		private void respond(byte[] response) {
+			responses.add(response);
+		}
+
+		private void readLoop() {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16))) {
+				byte[] word = new byte[256];
+				while (running) {
+					int length;
+					try {
+						length = in.readInt();
+					} catch (EOFException e) {
+						break; // the client is done
+					}
+					if (length < 5 || length > MAX_MESSAGE) {
+						break; // not speaking this protocol, so drop it
+					}
+					byte operation = in.readByte();
+					int id = in.readInt();
+					if (length - 5 > word.length) {
+						word = new byte[length - 5];
+					}
+					in.readFully(word, 0, length - 5);
+					String text = new String(word, 0, length - 5, StandardCharsets.UTF_8);
+
+					inFlight.acquire(); // stops reading while too many answers are outstanding
+					requests.increment();
+					dispatch(operation, id, text);
+				}
+			} catch (IOException | InterruptedException e) {
+				// the connection is gone
+			} finally {
+				close();
+			}
+		}
+
+		private void dispatch(byte operation, int id, String word) throws InterruptedException {
+			switch (operation) {
+			case CONTAINS:
+				lookups.put(new Lookup(this, id, word)); // blocks while the batcher is behind
+				break;
+			case AUTOCOMPLETE:
+				answerLater(id, () -> words(id, dictionary.completionPage(word, null, MAX_COMPLETIONS)));
+				break;
+			case CLOSE_MATCHES:
+				answerLater(id, () -> words(id, dictionary.closeMatches(word)));
+				break;
+			default:
+				respond(error(id, "unknown operation " + operation));
+			}
+		}
+
+		// Works out an answer on the worker pool. If that fails the client still gets an ERROR
+		// response, so it isn't left waiting and the request's in-flight permit is given back.
+		private void answerLater(int id, Supplier<byte[]> answer) {
+			workers.execute(() -> {
+				try {
+					respond(answer.get());
+				} catch (RuntimeException e) {
+					respond(error(id, e.toString()));
+				} catch (Error e) {
+					respond(error(id, e.toString()));
+					throw e;
+				}
+			});
+		}
+
+		private void writeLoop() {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16))) {
+				while (true) {
+					byte[] response = responses.take();
+					if (response == CLOSED) {
+						break;
+					}
+					out.write(response);
+					inFlight.release();
+					if (responses.isEmpty()) {
+						out.flush(); // only once nothing else is ready, so answers share packets
+					}
+				}
+			} catch (IOException | InterruptedException e) {
+				// the connection is gone
+			} finally {
+				close();
+			}
+		}
+
+		private void close() {
+			if (open.remove(this)) {
+				responses.add(CLOSED);
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// already closed
+				}
+			}
+		}
+	}
+
+	// Stops accepting connections, closes the open ones and stops the threads.
+	@Override
+	public void close() throws IOException {
+		running = false;
+		serverSocket.close();
+		for (Connection connection : open) {
+			connection.close();
+		}
+		batcher.interrupt();
+		workers.shutdownNow();
+		connections.shutdownNow();
+	}
+
+	// main method loads a word list and serves it until the process is stopped
+	// Usage: java SpellCheckServer [word list] [port]
+	public static void main(String[] args) throws Exception {
+		String file = args.length > 0 ? args[0] : "wordlist_English.txt";
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+		TrieSpellChecker dictionary = new TrieSpellChecker();
+		long count = dictionary.addFile(file);
+		SpellCheckServer server = new SpellCheckServer(dictionary, new InetSocketAddress(port));
+		System.out.println("serving " + count + " words on port " + server.getPort()
+				+ (VirtualThreads.available() ? " (virtual threads)" : ""));
+		while (true) {
+			Thread.sleep(10000);
+			System.out.printf("%d requests, %.1f lookups per batch%n", server.requests(), server.averageBatchSize());
+		}
+	}
+}
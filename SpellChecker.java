@@ -0,0 +1,30 @@
+import java.util.Set;
+
+// The operations every spell checker backend supports, so callers can be written once and
+// handed a TrieSpellChecker, a BSTSpellChecker or a MappedDictionary, or any of them wrapped in
+// an InstrumentedSpellChecker to see what they cost.
+
+public interface SpellChecker {
+
+	// Adds the word s to the dictionary.
+	void add(String s);
+
+	// Returns whether s is a word in the dictionary.
+	boolean contains(String s);
+
+	// Returns all of the words in the dictionary that start with s, including s itself.
+	Set<String> autocomplete(String s);
+
+	// Returns the words in the dictionary that s can be made into with one insertion, deletion or
+	// replacement. If s is already a word, it is included too.
+	Set<String> closeMatches(String s);
+
+	// Returns the number of distinct words in the dictionary.
+	int size();
+
+	// Gives the checker somewhere to report how much work each query does inside it, such as the
+	// nodes visited or the close match candidates tried. Pass null to stop reporting. Backends
+	// that can't tell ignore this, which is the default.
+	default void setMetrics(SpellCheckerMetrics metrics) {
+	}
+}
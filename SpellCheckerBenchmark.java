@@ -0,0 +1,167 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// A quick benchmark of both spell checkers at several dictionary sizes, for when a JMH run is more
+// than is needed. The real benchmarks are the JMH ones in benchmarks/ (gradle :benchmarks:jmh),
+// which fork a fresh JVM per run and use JMH's own sink and gc profiler; this runs the same
+// operations in one JVM with plain javac and java. Every operation is warmed up first, then run
+// repeatedly for a fixed time per iteration, and every result is fed into a sink so the JIT can't
+// drop the work. For each benchmark it reports throughput, average time per operation, and the
+// allocation rate (from the per-thread allocation counters; work handed to other threads, such as
+// the parallel part of TrieSpellChecker.addFile, is not included).
+//
+// Usage: java SpellCheckerBenchmark [word list] [sizes, e.g. 10000,100000,0 where 0 means all]
+
+public class SpellCheckerBenchmark {
+
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASURED_ITERATIONS = 5;
+	private static final long ITERATION_NANOS = 1000000000L;
+
+	private static long sink; // every result is folded in here so the work can't be optimized away
+
+	// One benchmarked operation. i counts the calls, so the operation can rotate through its inputs.
+	interface Operation {
+		Object run(int i) throws Exception;
+	}
+
+	private static void consume(Object result) {
+		if (result instanceof Boolean) {
+			sink += ((Boolean) result) ? 1 : 0;
+		} else if (result != null) {
+			sink += result.hashCode();
+		}
+	}
+
+	// Returns the bytes allocated by the current thread so far, or -1 if the JVM can't tell.
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	// Runs one iteration of op for ITERATION_NANOS, returning {operations, nanoseconds, bytes allocated}.
+	private static long[] iteration(Operation op) throws Exception {
+		long operations = 0;
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			consume(op.run((int) operations));
+			operations++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < ITERATION_NANOS);
+		long allocated = allocatedBytes() - allocatedBefore;
+		return new long[] { operations, elapsed, allocated };
+	}
+
+	// Warms op up, measures it and prints one line of results.
+	private static void run(String name, int size, Operation op) throws Exception {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			iteration(op);
+		}
+		long operations = 0, nanos = 0, bytes = 0;
+		for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+			long[] result = iteration(op);
+			operations += result[0];
+			nanos += result[1];
+			bytes += result[2];
+		}
+		double seconds = nanos / 1000000000.0;
+		System.out.printf("%-40s %9d %14.1f %14.1f %12.1f %10.1f%n", name, size, operations / seconds,
+				(double) nanos / operations, (double) bytes / operations, bytes / (1024.0 * 1024.0) / seconds);
+	}
+
+	// Writes words to a temporary file for the addFile benchmarks.
+	private static File writeWords(List<String> words) throws IOException {
+		File file = File.createTempFile("benchmark", ".txt");
+		file.deleteOnExit();
+		try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			for (String word : words) {
+				out.println(word);
+			}
+		}
+		return file;
+	}
+
+	private static void benchmarkSize(List<String> all, int size) throws Exception {
+		List<String> words = new ArrayList<>(all.subList(0, size));
+		String[] hits = words.toArray(new String[0]);
+		String[] misses = new String[hits.length];
+		String[] shortPrefixes = new String[hits.length];
+		String[] longPrefixes = new String[hits.length];
+		for (int i = 0; i < hits.length; i++) {
+			misses[i] = hits[i] + "qx";
+			shortPrefixes[i] = hits[i].substring(0, 1);
+			longPrefixes[i] = hits[i].substring(0, Math.min(5, hits[i].length()));
+		}
+		String filename = writeWords(words).getPath();
+		int n = hits.length;
+
+		TrieSpellChecker trie = new TrieSpellChecker();
+		trie.addFile(filename);
+		BSTSpellChecker bst = new BSTSpellChecker();
+		bst.addFile(filename);
+
+		run("TrieSpellChecker.add (whole list)", size, i -> {
+			TrieSpellChecker fresh = new TrieSpellChecker();
+			for (String word : hits) {
+				fresh.add(word);
+			}
+			return fresh;
+		});
+		run("TrieSpellChecker.addFile", size, i -> new TrieSpellChecker().addFile(filename));
+		run("TrieSpellChecker.contains (hit)", size, i -> trie.contains(hits[i % n]));
+		run("TrieSpellChecker.contains (miss)", size, i -> trie.contains(misses[i % n]));
+		run("TrieSpellChecker.autocomplete (1 char)", size, i -> trie.autocomplete(shortPrefixes[i % n]));
+		run("TrieSpellChecker.autocomplete (5 chars)", size, i -> trie.autocomplete(longPrefixes[i % n]));
+		run("TrieSpellChecker.closeMatches", size, i -> trie.closeMatches(misses[i % n]));
+		run("BSTSpellChecker.closeMatches", size, i -> bst.closeMatches(misses[i % n]));
+
+		// The same queries through the metrics wrapper, to show what leaving it on costs.
+		InstrumentedSpellChecker instrumented = new InstrumentedSpellChecker(trie);
+		run("Instrumented trie contains (hit)", size, i -> instrumented.contains(hits[i % n]));
+		run("Instrumented trie contains (miss)", size, i -> instrumented.contains(misses[i % n]));
+		run("Instrumented trie closeMatches", size, i -> instrumented.closeMatches(misses[i % n]));
+		trie.setMetrics(null);
+
+		run("BSTSpellChecker.add (whole list)", size, i -> {
+			BSTSpellChecker fresh = new BSTSpellChecker();
+			for (String word : hits) {
+				fresh.add(word);
+			}
+			return fresh;
+		});
+		run("BSTSpellChecker.addFile", size, i -> new BSTSpellChecker().addFile(filename));
+		run("BSTSpellChecker.contains (hit)", size, i -> bst.contains(hits[i % n]));
+		run("BSTSpellChecker.contains (miss)", size, i -> bst.contains(misses[i % n]));
+		run("BSTSpellChecker.autocomplete (1 char)", size, i -> bst.autocomplete(shortPrefixes[i % n]));
+		run("BSTSpellChecker.autocomplete (5 chars)", size, i -> bst.autocomplete(longPrefixes[i % n]));
+	}
+
+	// main method runs every benchmark at each dictionary size
+	public static void main(String[] args) throws Exception {
+		String file = args.length > 0 ? args[0] : "wordlist_English.txt";
+		String sizes = args.length > 1 ? args[1] : "10000,100000,0";
+
+		// Shuffle with a fixed seed, so every run and every size samples the same words, and so
+		// the unbalanced BST isn't fed alphabetized input.
+		List<String> all = WordReader.readAll(file);
+		Collections.shuffle(all, new Random(42));
+
+		System.out.printf("%-40s %9s %14s %14s %12s %10s%n", "benchmark", "words", "ops/s", "ns/op", "B/op", "MB/s alloc");
+		for (String size : sizes.split(",")) {
+			int n = Integer.parseInt(size.trim());
+			benchmarkSize(all, n <= 0 || n > all.size() ? all.size() : n);
+		}
+		System.out.println("(sink " + sink + ")");
+	}
+}
@@ -19,9 +19,10 @@ public class SpellCheckerClient {
 
 		System.out.println("\n\nrunning addFile for TrieSpellChecker...");
 		start = System.nanoTime();
-		trieTest.addFile(file);
+		long words = trieTest.addFile(file);
 		finish = System.nanoTime();
 		System.out.println("runtime for addFile with TrieSpellChecker: " + ((finish - start) / 1000000000) + " seconds");
+		System.out.println("load throughput for TrieSpellChecker: " + (long) (words / ((finish - start) / 1000000000)) + " words per second");
 
 		System.out.println("\n\nTesting retrieval with BSTSpellChecker....\nword = \"roundabout\"");
 		start = System.nanoTime();
@@ -0,0 +1,276 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Counts what a spell checker is asked to do and what it costs: calls and latency for each
+// operation, how often contains finds its word, how many nodes the queries visit and how many
+// candidates closeMatches tries. Everything is recorded into LongAdders, which many threads can
+// update at once without contending, so the metrics can stay on under load. Latencies go into
+// histograms with one bucket per power of two nanoseconds, so recording is a couple of
+// increments and percentiles are accurate to within a factor of two.
+// Read the metrics with snapshot(), or through JMX after register().
+
+public class SpellCheckerMetrics implements SpellCheckerMetricsMBean {
+
+	// The operations that are timed.
+	public enum Operation {
+		ADD, CONTAINS, AUTOCOMPLETE, CLOSE_MATCHES
+	}
+
+	// Bucket b counts latencies from 2^b up to 2^(b+1) nanoseconds; the last one also takes
+	// everything slower (2^40 ns is over 18 minutes).
+	private static final int BUCKETS = 41;
+
+	private static final int OPERATIONS = Operation.values().length;
+
+	private final LongAdder[] calls = newAdders(OPERATIONS);
+	private final LongAdder[] totalNanos = newAdders(OPERATIONS);
+	private final LongAdder[][] latencies = new LongAdder[OPERATIONS][];
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder nodesVisited = new LongAdder();
+	private final LongAdder traversals = new LongAdder(); // queries that reported nodes visited
+	private final LongAdder candidates = new LongAdder();
+
+	public SpellCheckerMetrics() {
+		for (int i = 0; i < OPERATIONS; i++) {
+			latencies[i] = newAdders(BUCKETS);
+		}
+	}
+
+	private static LongAdder[] newAdders(int count) {
+		LongAdder[] adders = new LongAdder[count];
+		for (int i = 0; i < count; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	// Records one call of operation that took the given number of nanoseconds.
+	public void record(Operation operation, long nanos) {
+		int i = operation.ordinal();
+		calls[i].increment();
+		totalNanos[i].add(nanos);
+		latencies[i][bucket(nanos)].increment();
+	}
+
+	// Records whether a contains call found its word.
+	public void recordLookup(boolean found) {
+		(found ? hits : misses).increment();
+	}
+
+	// Records the number of nodes one query visited.
+	public void recordNodesVisited(long nodes) {
+		nodesVisited.add(nodes);
+		traversals.increment();
+	}
+
+	// Records the number of candidates one closeMatches call tried.
+	public void recordCandidates(long count) {
+		candidates.add(count);
+	}
+
+	private static int bucket(long nanos) {
+		return nanos <= 1 ? 0 : Math.min(63 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1);
+	}
+
+	// Sets every count back to zero. Calls being recorded at the same time may be partly kept.
+	@Override
+	public void reset() {
+		for (int i = 0; i < OPERATIONS; i++) {
+			calls[i].reset();
+			totalNanos[i].reset();
+			for (LongAdder bucket : latencies[i]) {
+				bucket.reset();
+			}
+		}
+		hits.reset();
+		misses.reset();
+		nodesVisited.reset();
+		traversals.reset();
+		candidates.reset();
+	}
+
+	// Returns a copy of the metrics as they are now. The counters are read one at a time while
+	// calls may still be coming in, so counts taken at the same moment can differ by a few calls.
+	public Snapshot snapshot() {
+		long[] callCounts = new long[OPERATIONS];
+		long[] nanos = new long[OPERATIONS];
+		long[][] histograms = new long[OPERATIONS][BUCKETS];
+		for (int i = 0; i < OPERATIONS; i++) {
+			callCounts[i] = calls[i].sum();
+			nanos[i] = totalNanos[i].sum();
+			for (int b = 0; b < BUCKETS; b++) {
+				histograms[i][b] = latencies[i][b].sum();
+			}
+		}
+		return new Snapshot(callCounts, nanos, histograms, hits.sum(), misses.sum(), nodesVisited.sum(),
+				traversals.sum(), candidates.sum());
+	}
+
+	// Registers these metrics with the platform MBean server under
+	// SpellChecker:type=Metrics,name=<name> and returns that name.
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("SpellChecker:type=Metrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	// The metrics at one point in time.
+	public static class Snapshot {
+		private final long[] calls;
+		private final long[] totalNanos;
+		private final long[][] histograms;
+		private final long hits;
+		private final long misses;
+		private final long nodesVisited;
+		private final long traversals;
+		private final long candidates;
+
+		public Snapshot(long[] calls, long[] totalNanos, long[][] histograms, long hits, long misses,
+				long nodesVisited, long traversals, long candidates) {
+			this.calls = calls;
+			this.totalNanos = totalNanos;
+			this.histograms = histograms;
+			this.hits = hits;
+			this.misses = misses;
+			this.nodesVisited = nodesVisited;
+			this.traversals = traversals;
+			this.candidates = candidates;
+		}
+
+		public long calls(Operation operation) {
+			return calls[operation.ordinal()];
+		}
+
+		public double meanNanos(Operation operation) {
+			long count = calls(operation);
+			return count == 0 ? 0 : (double) totalNanos[operation.ordinal()] / count;
+		}
+
+		// Returns the latency that the given fraction (0 to 1) of calls of operation came in
+		// under, rounded up to the top of its power of two bucket.
+		public long percentileNanos(Operation operation, double fraction) {
+			long[] histogram = histograms[operation.ordinal()];
+			long count = calls(operation);
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(fraction * count));
+			long seen = 0;
+			for (int b = 0; b < BUCKETS; b++) {
+				seen += histogram[b];
+				if (seen >= rank) {
+					return (1L << (b + 1)) - 1;
+				}
+			}
+			return Long.MAX_VALUE; // buckets were still being filled when the counts were read
+		}
+
+		public long hits() {
+			return hits;
+		}
+
+		public long misses() {
+			return misses;
+		}
+
+		// Returns the fraction of contains calls that found their word.
+		public double hitRatio() {
+			return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+		}
+
+		public long nodesVisited() {
+			return nodesVisited;
+		}
+
+		// Returns the average number of nodes visited by the queries that reported them.
+		public double nodesVisitedPerQuery() {
+			return traversals == 0 ? 0 : (double) nodesVisited / traversals;
+		}
+
+		public long candidates() {
+			return candidates;
+		}
+
+		public String toString() {
+			StringBuilder text = new StringBuilder();
+			text.append(String.format("%-14s %10s %10s %10s %10s%n", "operation", "calls", "mean ns", "p50 ns", "p99 ns"));
+			for (Operation operation : Operation.values()) {
+				text.append(String.format("%-14s %10d %10.0f %10d %10d%n", operation, calls(operation),
+						meanNanos(operation), percentileNanos(operation, 0.5), percentileNanos(operation, 0.99)));
+			}
+			text.append(String.format("hit ratio %.3f, %.1f nodes visited per query, %d close match candidates",
+					hitRatio(), nodesVisitedPerQuery(), candidates));
+			return text.toString();
+		}
+	}
+
+	// The MBean attributes are read from the live counters whenever JMX asks for them.
+
+	@Override
+	public long getAddCount() {
+		return calls[Operation.ADD.ordinal()].sum();
+	}
+
+	@Override
+	public long getContainsCount() {
+		return calls[Operation.CONTAINS.ordinal()].sum();
+	}
+
+	@Override
+	public long getAutocompleteCount() {
+		return calls[Operation.AUTOCOMPLETE.ordinal()].sum();
+	}
+
+	@Override
+	public long getCloseMatchesCount() {
+		return calls[Operation.CLOSE_MATCHES.ordinal()].sum();
+	}
+
+	@Override
+	public double getContainsHitRatio() {
+		return snapshot().hitRatio();
+	}
+
+	@Override
+	public long getContainsP50Nanos() {
+		return snapshot().percentileNanos(Operation.CONTAINS, 0.5);
+	}
+
+	@Override
+	public long getContainsP99Nanos() {
+		return snapshot().percentileNanos(Operation.CONTAINS, 0.99);
+	}
+
+	@Override
+	public long getAutocompleteP50Nanos() {
+		return snapshot().percentileNanos(Operation.AUTOCOMPLETE, 0.5);
+	}
+
+	@Override
+	public long getAutocompleteP99Nanos() {
+		return snapshot().percentileNanos(Operation.AUTOCOMPLETE, 0.99);
+	}
+
+	@Override
+	public long getCloseMatchesP50Nanos() {
+		return snapshot().percentileNanos(Operation.CLOSE_MATCHES, 0.5);
+	}
+
+	@Override
+	public long getCloseMatchesP99Nanos() {
+		return snapshot().percentileNanos(Operation.CLOSE_MATCHES, 0.99);
+	}
+
+	@Override
+	public double getNodesVisitedPerQuery() {
+		return snapshot().nodesVisitedPerQuery();
+	}
+
+	@Override
+	public long getCloseMatchCandidates() {
+		return candidates.sum();
+	}
+}
@@ -0,0 +1,35 @@
+// The attributes of SpellCheckerMetrics as seen through JMX (jconsole, VisualVM and the like).
+// Latencies are in nanoseconds and, like every percentile from SpellCheckerMetrics, are only
+// accurate to within a factor of two.
+
+public interface SpellCheckerMetricsMBean {
+
+	long getAddCount();
+
+	long getContainsCount();
+
+	long getAutocompleteCount();
+
+	long getCloseMatchesCount();
+
+	double getContainsHitRatio();
+
+	long getContainsP50Nanos();
+
+	long getContainsP99Nanos();
+
+	long getAutocompleteP50Nanos();
+
+	long getAutocompleteP99Nanos();
+
+	long getCloseMatchesP50Nanos();
+
+	long getCloseMatchesP99Nanos();
+
+	double getNodesVisitedPerQuery();
+
+	long getCloseMatchCandidates();
+
+	// Sets every count back to zero.
+	void reset();
+}
@@ -0,0 +1,334 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// A suggestion engine that answers closeMatches from a precomputed index instead of walking a
+// trie, using the symmetric delete idea from SymSpell: if a word is within maxDistance edits of
+// a query, then deleting at most maxDistance characters from each of them gives the same string.
+// So every deletion variant of every word is indexed up front, and a query only has to look up
+// its own deletion variants and check the handful of words found there.
+// The variants aren't kept as strings. Each one is reduced to a 64-bit hash, and the hashes go
+// into an open-addressing table whose slot i owns the word ids ids[starts[i]] up to
+// ids[starts[i + 1]], so a variant costs one int per word plus its share of the table. Hash
+// collisions can only add candidates, and every candidate is checked against the query, so the
+// results are exactly those of TrieSpellChecker.closeMatches at the same settings.
+// The index can't be changed once built, and any number of threads can query it at once.
+
+public class SymSpellIndex {
+
+	private final String[] words; // sorted and distinct; a word's id is its position here
+	private final int maxDistance;
+	private final boolean transpositions;
+
+	private long[] keys; // variant hashes, 0 for an empty slot
+	private int[] counts; // words per slot, only used while building
+	private int[] starts; // slot i owns ids[starts[i]] to ids[starts[i + 1]]
+	private int[] ids;
+	private int keyCount;
+
+	// Indexes words for closeMatches within maxDistance (1 to 3) insertions, deletions or
+	// replacements, and also swaps of neighbouring letters if transpositions is true.
+	public SymSpellIndex(List<String> words, int maxDistance, boolean transpositions) {
+		if (maxDistance < 1 || maxDistance > 3) {
+			throw new IllegalArgumentException("maxDistance must be between 1 and 3: " + maxDistance);
+		}
+		this.maxDistance = maxDistance;
+		this.transpositions = transpositions;
+
+		String[] sorted = words.toArray(new String[0]);
+		Arrays.sort(sorted);
+		int distinct = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (distinct == 0 || !sorted[i].equals(sorted[distinct - 1])) {
+				sorted[distinct++] = sorted[i];
+			}
+		}
+		this.words = Arrays.copyOf(sorted, distinct);
+
+		// The first pass finds every variant and counts its words, the second lays the ids out
+		// in slot order, so each variant's words end up next to each other.
+		keys = new long[1024];
+		counts = new int[keys.length];
+		for (String word : this.words) {
+			for (long hash : deleteHashes(word)) {
+				int slot = insert(hash); // may grow the table, so counts is read afterwards
+				counts[slot]++;
+			}
+		}
+		starts = new int[keys.length + 1];
+		for (int slot = 0; slot < keys.length; slot++) {
+			starts[slot + 1] = starts[slot] + counts[slot];
+		}
+		ids = new int[starts[keys.length]];
+		int[] next = Arrays.copyOf(starts, keys.length);
+		for (int id = 0; id < this.words.length; id++) {
+			for (long hash : deleteHashes(this.words[id])) {
+				ids[next[find(hash)]++] = id;
+			}
+		}
+		counts = null;
+	}
+
+	// Reads a word list and indexes it.
+	public static SymSpellIndex fromFile(String filename, int maxDistance, boolean transpositions)
+			throws FileNotFoundException {
+		try {
+			return new SymSpellIndex(WordReader.readAll(filename), maxDistance, transpositions);
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Returns the slot holding hash, adding it first if it isn't there. Only used while building.
+	private int insert(long hash) {
+		int slot = find(hash);
+		if (keys[slot] == 0) {
+			if ((keyCount + 1) * 10L > keys.length * 6L) { // keep the table at most 60% full
+				grow();
+				slot = find(hash);
+			}
+			keys[slot] = hash;
+			keyCount++;
+		}
+		return slot;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldCounts = counts;
+		keys = new long[oldKeys.length * 2];
+		counts = new int[keys.length];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != 0) {
+				int slot = find(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	// Returns the slot holding hash, or the empty slot where it would go.
+	private int find(long hash) {
+		int mask = keys.length - 1;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (keys[slot] != 0 && keys[slot] != hash) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	// Returns the distinct hashes of every string made by deleting up to maxDistance characters
+	// from s, including s itself.
+	private long[] deleteHashes(String s) {
+		int n = s.length();
+		int most = Math.min(maxDistance, n);
+		long total = 0;
+		long combinations = 1;
+		for (int k = 0; k <= most; k++) {
+			total += combinations; // combinations is n choose k
+			combinations = combinations * (n - k) / (k + 1);
+		}
+		long[] hashes = new long[(int) total];
+		int count = 0;
+		int[] deleted = new int[most];
+		for (int k = 0; k <= most; k++) {
+			// Step through every choice of k positions in increasing order.
+			for (int i = 0; i < k; i++) {
+				deleted[i] = i;
+			}
+			while (true) {
+				hashes[count++] = hash(s, deleted, k);
+				int i = k - 1;
+				while (i >= 0 && deleted[i] == n - k + i) {
+					i--;
+				}
+				if (i < 0) {
+					break;
+				}
+				deleted[i]++;
+				for (int j = i + 1; j < k; j++) {
+					deleted[j] = deleted[j - 1] + 1;
+				}
+			}
+		}
+		// Repeated letters give the same variant more than once ("aab" without either a is "ab").
+		Arrays.sort(hashes);
+		int distinct = 0;
+		for (int i = 0; i < hashes.length; i++) {
+			if (distinct == 0 || hashes[i] != hashes[distinct - 1]) {
+				hashes[distinct++] = hashes[i];
+			}
+		}
+		return distinct == hashes.length ? hashes : Arrays.copyOf(hashes, distinct);
+	}
+
+	// Hashes s without the characters at the first k (increasing) positions in deleted. The
+	// result is never 0, which marks an empty slot.
+	private static long hash(String s, int[] deleted, int k) {
+		long h = 0xcbf29ce484222325L;
+		int next = 0;
+		for (int i = 0; i < s.length(); i++) {
+			if (next < k && deleted[next] == i) {
+				next++;
+				continue;
+			}
+			h = (h ^ s.charAt(i)) * 0x100000001b3L;
+		}
+		h = (h ^ s.length() - k) * 0x100000001b3L;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		return h != 0 ? h : 1;
+	}
+
+	// Returns whether s is a word in the index.
+	public boolean contains(String s) {
+		int slot = find(hash(s, null, 0));
+		for (int i = starts[slot]; i < starts[slot + 1]; i++) {
+			if (words[ids[i]].equals(s)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Returns every word within maxDistance of s, the same set as TrieSpellChecker.closeMatches
+	// with the settings this index was built for.
+	public Set<String> closeMatches(String s) {
+		// Gather the words sharing a variant with s, skipping any whose length rules them out.
+		int[] candidates = new int[32];
+		int count = 0;
+		for (long hash : deleteHashes(s)) {
+			int slot = find(hash);
+			for (int i = starts[slot]; i < starts[slot + 1]; i++) {
+				int id = ids[i];
+				if (Math.abs(words[id].length() - s.length()) <= maxDistance) {
+					if (count == candidates.length) {
+						candidates = Arrays.copyOf(candidates, count * 2);
+					}
+					candidates[count++] = id;
+				}
+			}
+		}
+		// A word usually shares several variants with s, so check each one once.
+		Arrays.sort(candidates, 0, count);
+		Set<String> result = new HashSet<>();
+		for (int i = 0; i < count; i++) {
+			if ((i == 0 || candidates[i] != candidates[i - 1]) && withinDistance(words[candidates[i]], s)) {
+				result.add(words[candidates[i]]);
+			}
+		}
+		return result;
+	}
+
+	// Returns whether a and b are within maxDistance edits, stopping as soon as a whole row of
+	// the edit distance table is over it.
+	private boolean withinDistance(String a, String b) {
+		int[] older = new int[b.length() + 1];
+		int[] previous = new int[b.length() + 1];
+		int[] row = new int[b.length() + 1];
+		for (int j = 0; j <= b.length(); j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= a.length(); i++) {
+			row[0] = i;
+			int best = i;
+			for (int j = 1; j <= b.length(); j++) {
+				int replace = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+				int distance = Math.min(replace, Math.min(previous[j] + 1, row[j - 1] + 1));
+				if (transpositions && i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2)
+						&& a.charAt(i - 2) == b.charAt(j - 1)) {
+					distance = Math.min(distance, older[j - 2] + 1);
+				}
+				row[j] = distance;
+				best = Math.min(best, distance);
+			}
+			if (best > maxDistance) {
+				return false;
+			}
+			int[] swap = older;
+			older = previous;
+			previous = row;
+			row = swap;
+		}
+		return previous[b.length()] <= maxDistance;
+	}
+
+	// Returns the number of words in the index.
+	public int size() {
+		return words.length;
+	}
+
+	// Returns the bytes used by the index arrays, not counting the word strings themselves.
+	public long indexBytes() {
+		return 8L * keys.length + 4L * starts.length + 4L * ids.length;
+	}
+
+	// main method checks the index against the trie on random typos and compares their speed
+	// Usage: java -Xmx2g SymSpellIndex [word list]
+	public static void main(String[] args) throws IOException {
+		String file = args.length > 0 ? args[0] : "wordlist_English.txt";
+		TrieSpellChecker trie = new TrieSpellChecker();
+		trie.addFile(file);
+		List<String> words = WordReader.readAll(file);
+
+		// Typos made with one or two random edits of random words.
+		Random random = new Random(42);
+		List<String> typos = new ArrayList<>();
+		for (int i = 0; i < 100000; i++) {
+			StringBuilder word = new StringBuilder(words.get(random.nextInt(words.size())));
+			for (int edits = 1 + random.nextInt(2); edits > 0 && word.length() > 0; edits--) {
+				int at = random.nextInt(word.length());
+				switch (random.nextInt(3)) {
+				case 0:
+					word.deleteCharAt(at);
+					break;
+				case 1:
+					word.setCharAt(at, (char) ('a' + random.nextInt(26)));
+					break;
+				default:
+					word.insert(at, (char) ('a' + random.nextInt(26)));
+				}
+			}
+			typos.add(word.toString());
+		}
+
+		for (int distance = 1; distance <= 2; distance++) {
+			long start = System.nanoTime();
+			SymSpellIndex index = new SymSpellIndex(words, distance, true);
+			double buildSeconds = (System.nanoTime() - start) / 1000000000.0;
+
+			int mismatches = 0;
+			for (String typo : typos.subList(0, 2000)) {
+				if (!index.closeMatches(typo).equals(trie.closeMatches(typo, distance, true))) {
+					mismatches++;
+				}
+			}
+			long found = 0;
+			double indexNanos = 0, trieNanos = 0;
+			for (int round = 0; round < 3; round++) { // the first rounds are warmup
+				start = System.nanoTime();
+				for (String typo : typos) {
+					found += index.closeMatches(typo).size();
+				}
+				indexNanos = (double) (System.nanoTime() - start) / typos.size();
+				start = System.nanoTime();
+				for (String typo : typos.subList(0, 10000)) {
+					found += trie.closeMatches(typo, distance, true).size();
+				}
+				trieNanos = (double) (System.nanoTime() - start) / 10000;
+			}
+			System.out.printf("distance %d: built in %.1f s, %d variants, %.1f MB of index, %d mismatches%n",
+					distance, buildSeconds, index.keyCount, index.indexBytes() / (1024.0 * 1024.0), mismatches);
+			System.out.printf("  index %.0f ns/query, trie %.0f ns/query (%d found)%n", indexNanos, trieNanos, found);
+		}
+	}
+}
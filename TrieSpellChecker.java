@@ -1,22 +1,65 @@
-import java.io.File;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Scanner;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 // Implements a SpellChecker/Dictionary using a trie data structure.
-public class TrieSpellChecker {
+public class TrieSpellChecker implements SpellChecker {
 
 	Node root = new Node(' ');
+	private boolean minimized; // once minimized, nodes are shared between words and can't be changed
+	private volatile boolean frozen; // once frozen, the trie is read-only and can be shared freely
+	private int size; // number of words in the trie
+	private SpellCheckerMetrics metrics; // where traversal counts are reported, or null
+
+	// The node class contains a character, its children, and a boolean value to track if each node is shaded.
+	// Shaded nodes indicate that the node is the last letter in a word. Other classes in the package
+	// (such as OverlaySpellChecker) may walk the nodes, but only change them through the trie.
+	// The children grow with the node: small nodes keep their characters in a sorted char[] (keys) with a
+	// parallel Node[] (kids) that is searched with an early exit, and once a node has more than DENSE_THRESHOLD
+	// children a dense table indexed by (character - tableBase) is added on top so a lookup is a single array access.
+	static class Node {
+		private static final int LINEAR_SCAN_LIMIT = 8;
+		private static final int DENSE_THRESHOLD = 16;
+		private static final int MAX_DENSE_SPAN = 256;
+		private static final char[] NO_KEYS = new char[0];
+		private static final Node[] NO_KIDS = new Node[0];
 
-	// The node class contains a character, children represented by an
-	// ArrayList, and a boolean value to track if each node is shaded. Shaded nodes indicate that the node
-	// is the last letter in a word.
-	private static class Node {
 		private char data;
-		private ArrayList<Node> children = new ArrayList<>();
+		private char[] keys = NO_KEYS;
+		private Node[] kids = NO_KIDS;
+		private int childCount;
+		private Node[] table; // only present for large fan-out
+		private char tableBase;
 		private boolean isShaded;
+		private long score; // frequency of the word ending here, if it was added with one
+		private long maxScore; // highest score of any word in this node's subtree
 
 		public Node(char data) {
 			this.data = data;
@@ -26,117 +69,635 @@ public class TrieSpellChecker {
 		public void setIsShaded(boolean b) {
 			isShaded = b;
 		}
+
+		public boolean isShaded() {
+			return isShaded;
+		}
+
+		public long score() {
+			return score;
+		}
+
+		public long maxScore() {
+			return maxScore;
+		}
+
+		public int childCount() {
+			return childCount;
+		}
+
+		// Children are kept sorted by character, so childAt walks them in alphabetical order.
+		public Node childAt(int i) {
+			return kids[i];
+		}
+
+		// Returns the character leading to the child at position i. Use this rather than the
+		// child's own data, since nodes in a minimized trie are shared between characters.
+		public char keyAt(int i) {
+			return keys[i];
+		}
+
+		// Returns the child holding character c, or null if there is none.
+		public Node getChild(char c) {
+			if (table != null) {
+				int index = c - tableBase;
+				return (index >= 0 && index < table.length) ? table[index] : null;
+			}
+			int index = indexOf(c);
+			return index >= 0 ? kids[index] : null;
+		}
+
+		// Returns the child holding character c, creating it first if it is not there yet.
+		public Node getOrAddChild(char c) {
+			int index = indexOf(c);
+			if (index >= 0) {
+				return kids[index];
+			}
+			Node child = new Node(c);
+			insertChild(-index - 1, child);
+			return child;
+		}
+
+		// Finds c among the sorted keys. Like Arrays.binarySearch, a missing character gives
+		// (-(insertion point) - 1).
+		private int indexOf(char c) {
+			if (childCount <= LINEAR_SCAN_LIMIT) {
+				for (int i = 0; i < childCount; i++) {
+					if (keys[i] == c) {
+						return i;
+					} else if (keys[i] > c) { // keys are sorted, so c can't come later
+						return -i - 1;
+					}
+				}
+				return -childCount - 1;
+			}
+			return Arrays.binarySearch(keys, 0, childCount, c);
+		}
+
+		private void insertChild(int position, Node child) {
+			if (childCount == keys.length) {
+				int capacity = Math.max(2, childCount * 2);
+				keys = Arrays.copyOf(keys, capacity);
+				kids = Arrays.copyOf(kids, capacity);
+			}
+			System.arraycopy(keys, position, keys, position + 1, childCount - position);
+			System.arraycopy(kids, position, kids, position + 1, childCount - position);
+			keys[position] = child.data;
+			kids[position] = child;
+			childCount++;
+
+			if (table != null && child.data - tableBase >= 0 && child.data - tableBase < table.length) {
+				table[child.data - tableBase] = child;
+			} else if (childCount > DENSE_THRESHOLD) {
+				buildTable();
+			}
+		}
+
+		// Removes the child at position i.
+		private void removeChild(int i) {
+			char c = keys[i];
+			System.arraycopy(keys, i + 1, keys, i, childCount - i - 1);
+			System.arraycopy(kids, i + 1, kids, i, childCount - i - 1);
+			childCount--;
+			kids[childCount] = null;
+
+			if (childCount <= DENSE_THRESHOLD) {
+				table = null;
+			} else if (table == null || i == 0 || i == childCount) {
+				buildTable(); // the span shrank, and may fit in a table now
+			} else {
+				table[c - tableBase] = null;
+			}
+		}
+
+		// Swaps the child at position i for another node holding the same character.
+		private void replaceChild(int i, Node child) {
+			kids[i] = child;
+			if (table != null) {
+				table[keys[i] - tableBase] = child;
+			}
+		}
+
+		// (Re)builds the dense table so it spans every child character. Nodes whose characters are
+		// spread too far apart stay with the sorted layout.
+		private void buildTable() {
+			int span = keys[childCount - 1] - keys[0] + 1;
+			if (span > MAX_DENSE_SPAN) {
+				table = null;
+				return;
+			}
+			tableBase = keys[0];
+			table = new Node[span];
+			for (int i = 0; i < childCount; i++) {
+				table[keys[i] - tableBase] = kids[i];
+			}
+		}
+	}
+
+	// Throws if the trie can no longer be changed, because it was minimized or frozen.
+	private void checkChangeable() {
+		if (minimized) {
+			throw new UnsupportedOperationException("a minimized trie can't be changed");
+		}
+		if (frozen) {
+			throw new UnsupportedOperationException("a frozen trie can't be changed");
+		}
+	}
+
+	// Makes the trie read-only: every later change throws UnsupportedOperationException. A frozen
+	// trie can be queried by any number of threads and shared between OverlaySpellCheckers.
+	public void freeze() {
+		frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
 	}
 
 	// takes the string argument s and adds its characters to the trie.
+	@Override
 	public void add(String s) {
+		checkChangeable();
 		Node temp = root; // The temp node is set to the root, which is empty.
-		char currentLetter;
-		boolean nodeCheck = false; // NodeCheck will track whether a child
-									// contains the current character.
 
+		// As the loop iterates, temp moves to the child holding the current
+		// letter, which is created if it isn't already there.
 		for (int i = 0; i < s.length(); i++) {
-			currentLetter = s.charAt(i);
-			nodeCheck = false;
-			// As the loop iterates, if the current letter in the string is
-			// found, temp becomes that node.
-			for (Node j : temp.children) {
-				if (j.data == currentLetter) {
-					temp = j;
-					nodeCheck = true;
-				}
-			}
-
-			// If after that initial loop, nodeCheck remains false, then we
-			// create a new node.
-			if (nodeCheck == false) {
-				Node nextTemp = new Node(currentLetter);
-				temp.children.add(nextTemp);
-				temp = nextTemp;
-			}
+			temp = temp.getOrAddChild(s.charAt(i));
 		}
 		// Once we reach the end of the string, thus the end of the word, that
 		// node is shaded.
+		if (!temp.isShaded) {
+			size++;
+		}
+		temp.setIsShaded(true);
+	}
+
+	// Adds s with the given frequency score, which topK uses to rank completions. Every node on
+	// the way down keeps the highest score in its subtree. Adding a word again with a lower
+	// score leaves those maximums a little high, which is fine since topK only needs an upper bound.
+	public void add(String s, long score) {
+		checkChangeable();
+		Node temp = root;
+		temp.maxScore = Math.max(temp.maxScore, score);
+		for (int i = 0; i < s.length(); i++) {
+			temp = temp.getOrAddChild(s.charAt(i));
+			temp.maxScore = Math.max(temp.maxScore, score);
+		}
+		if (!temp.isShaded) {
+			size++;
+		}
 		temp.setIsShaded(true);
+		temp.score = score;
+	}
+
+	// Removes the word s from the trie, returning false if it wasn't there. Nodes that no longer
+	// lead to any word are cut off, and the best scores along the path are worked out again.
+	public boolean remove(String s) {
+		checkChangeable();
+		Node[] path = new Node[s.length() + 1];
+		path[0] = root;
+		for (int i = 0; i < s.length(); i++) {
+			path[i + 1] = path[i].getChild(s.charAt(i));
+			if (path[i + 1] == null) {
+				return false;
+			}
+		}
+		Node end = path[s.length()];
+		if (!end.isShaded) {
+			return false;
+		}
+		end.setIsShaded(false);
+		end.score = 0;
+		size--;
+
+		// Work back up the path, dropping nodes with nothing left below them.
+		for (int depth = s.length(); depth >= 0; depth--) {
+			Node node = path[depth];
+			if (depth > 0 && node.childCount() == 0 && !node.isShaded) {
+				Node parent = path[depth - 1];
+				parent.removeChild(parent.indexOf(s.charAt(depth - 1)));
+				continue;
+			}
+			long best = node.isShaded ? node.score : 0;
+			for (int i = 0; i < node.childCount(); i++) {
+				best = Math.max(best, node.childAt(i).maxScore);
+			}
+			node.maxScore = best;
+		}
+		return true;
 	}
 
 	// Contains checks the trie to see if that word can be made with the
 	// characters in the trie.
+	@Override
 	public boolean contains(String s) {
 		Node temp = root;
-		boolean foundChild = false;
 
-		// Iterate through the string by character, checking to see if a child
-		// node containing that
-		// character can be found.
+		// Iterate through the string by character, moving down to the child
+		// node containing that character.
 		for (int i = 0; i < s.length(); i++) {
-			foundChild = false;
-			for (Node j : temp.children) {
-				if (s.charAt(i) == j.data) {
-					// If one is found, we move down the tree and set our
-					// tracker boolean to true.
-					temp = j;
-					foundChild = true;
-				}
-			}
+			temp = temp.getChild(s.charAt(i));
 
-			// However, if our tracker boolean is still false by this point,
-			// then we know the character, and by extension the word, is not in the trie.
-			if (foundChild == false) {
+			// If there is no such child, then we know the character, and by
+			// extension the word, is not in the trie.
+			if (temp == null) {
+				recordNodesVisited(i);
 				return false;
 			}
 		}
+		recordNodesVisited(s.length());
 		// If we are able to reach this statement, then all that remains is to
 		// check if the
 		// node we ended on is shaded. If so, then the word is valid.
 		return temp.isShaded;
 	}
 
-	// This is a basic addFile method to read in the word list given in the
-	// assignment.
-	public void addFile(String filename) throws FileNotFoundException {
-		try {
-			Scanner s = new Scanner(new File(filename));
+	// Returns the number of words in the trie.
+	@Override
+	public int size() {
+		return size;
+	}
+
+	// Reports the nodes visited by each contains, autocomplete and closeMatches call, and the
+	// candidates tried by closeMatches, to metrics. Set this before the trie is queried.
+	@Override
+	public void setMetrics(SpellCheckerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	private void recordNodesVisited(long nodes) {
+		if (metrics != null) {
+			metrics.recordNodesVisited(nodes);
+		}
+	}
 
-			ArrayList<String> words = new ArrayList<>();
-			while (s.hasNext()) {
-				words.add(s.next());
+	// Checks a whole batch of words, such as the tokens of a document, and returns a BitSet with
+	// bit i set when words[i] is in the trie. The batch is sorted, so each word only walks down
+	// from where it stops sharing a prefix with the word before it, and large batches are
+	// checked in parallel. The trie shouldn't be changed during the call.
+	public BitSet containsAll(String[] words) {
+		return BatchLookup.check(words, this::containsSorted);
+	}
+
+	public BitSet containsAll(Collection<String> words) {
+		return containsAll(words.toArray(new String[0]));
+	}
+
+	// Checks the sorted words in [from, to). path[d] is the node reached by the first d letters
+	// of the previous word, for every d up to depth.
+	private void containsSorted(String[] words, int from, int to, boolean[] found) {
+		Node[] path = new Node[16];
+		path[0] = root;
+		int depth = 0;
+		String previous = "";
+
+		for (int i = from; i < to; i++) {
+			String word = words[i];
+			int common = 0;
+			int limit = Math.min(depth, word.length());
+			while (common < limit && word.charAt(common) == previous.charAt(common)) {
+				common++;
+			}
+			depth = common;
+
+			Node temp = path[depth];
+			while (depth < word.length()) {
+				temp = temp.getChild(word.charAt(depth));
+				if (temp == null) {
+					break;
+				}
+				depth++;
+				if (depth == path.length) {
+					path = Arrays.copyOf(path, depth * 2);
+				}
+				path[depth] = temp;
 			}
+			found[i] = temp != null && temp.isShaded;
+			previous = word;
+		}
+	}
 
-			s.close();
+	// Reads in the word list given in the assignment, streaming it from the file rather than
+	// reading it all in first. Words are sorted into batches by their first letter, and since
+	// words with different first letters end up in disjoint subtries, each batch is inserted on
+	// the fork-join pool while the file is still being read. Batches for the same first letter
+	// run one after another, and only a bounded number of batches are waiting at any time, so
+	// the memory used doesn't grow with the size of the file. Returns the number of words read.
+	public long addFile(String filename) throws FileNotFoundException {
+		checkChangeable();
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		Semaphore inFlight = new Semaphore(4 * pool.getParallelism());
+		Map<Character, Shard> shards = new HashMap<>();
+		long count = 0;
 
-			for (String i : words) {
-				this.add(i);
+		try (WordReader reader = new WordReader(filename)) {
+			String word;
+			while ((word = reader.next()) != null) {
+				count++;
+				char first = word.charAt(0);
+				Shard shard = shards.get(first);
+				if (shard == null) {
+					// Only this thread ever touches the root, the workers stay below it.
+					shard = new Shard(root.getOrAddChild(first));
+					shards.put(first, shard);
+				}
+				shard.batch[shard.size++] = word;
+				if (shard.size == Shard.BATCH_SIZE && !shard.submit(pool, inFlight)) {
+					break; // a batch has failed, so there's no point reading any further
+				}
+			}
+			for (Shard shard : shards.values()) {
+				if (shard.size > 0) {
+					shard.submit(pool, inFlight);
+				}
+			}
+			RuntimeException failed = awaitShards(shards);
+			if (failed != null) {
+				throw failed;
 			}
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			awaitShards(shards); // so the trie has stopped changing before the failure is reported
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			awaitShards(shards);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while loading " + filename, e);
+		}
+		return count;
+	}
+
+	// Waits for every batch already handed to the pool and counts the words they added. Returns
+	// the first failure among the batches, or null if they all went through.
+	private RuntimeException awaitShards(Map<Character, Shard> shards) {
+		RuntimeException failed = null;
+		for (Shard shard : shards.values()) {
+			try {
+				shard.pending.join();
+			} catch (RuntimeException e) {
+				if (failed == null) {
+					failed = e;
+				}
+			}
+			size += shard.added;
+		}
+		return failed;
+	}
+
+	// The words waiting to be added below one child of the root, and the chain of batches
+	// already handed to the pool for it.
+	private static class Shard {
+		private static final int BATCH_SIZE = 4096;
+
+		private final Node node;
+		private String[] batch = new String[BATCH_SIZE];
+		private int size;
+		private CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+		private int added; // new words added by the batches so far, only read once they are done
+
+		public Shard(Node node) {
+			this.node = node;
+		}
+
+		// Queues the current batch behind the earlier ones for this shard and starts a new batch.
+		// Returns false without queueing anything if an earlier batch for this shard has failed.
+		public boolean submit(ForkJoinPool pool, Semaphore inFlight) throws InterruptedException {
+			if (pending.isCompletedExceptionally()) {
+				return false;
+			}
+			String[] words = batch;
+			int count = size;
+			inFlight.acquire();
+			// The permit comes back however the batch ends, even when it is skipped because an
+			// earlier batch failed, so the reading thread never waits for one that is lost.
+			pending = pending.thenRunAsync(() -> insert(words, count), pool).whenComplete((v, e) -> inFlight.release());
+			batch = new String[BATCH_SIZE];
+			size = 0;
+			return true;
+		}
 
+		// Adds the words, which all start with this shard's letter, below the shard's node.
+		private void insert(String[] words, int count) {
+			for (int i = 0; i < count; i++) {
+				Node temp = node;
+				for (int j = 1; j < words[i].length(); j++) {
+					temp = temp.getOrAddChild(words[i].charAt(j));
+				}
+				if (!temp.isShaded) {
+					added++;
+				}
+				temp.setIsShaded(true);
+			}
+		}
+	}
+
+	// Reads in a weighted word list, where each word is followed by its count (usually written as
+	// word<TAB>count on each line), and adds every word with that count as its score.
+	// Returns the number of words read.
+	public long addWeightedFile(String filename) throws FileNotFoundException {
+		long count = 0;
+		try (WordReader reader = new WordReader(filename)) {
+			String word;
+			while ((word = reader.next()) != null) {
+				String score = reader.next();
+				if (score == null) {
+					throw new IllegalArgumentException("missing count for \"" + word + "\" in " + filename);
+				}
+				try {
+					add(word, Long.parseLong(score));
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("bad count for \"" + word + "\" in " + filename + ": " + score);
+				}
+				count++;
+			}
 		} catch (FileNotFoundException e) {
-			throw new FileNotFoundException();
+			throw e;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return count;
+	}
+
+	// Reads in a word list and builds it as a minimized trie (a DAWG): besides prefixes,
+	// equivalent suffixes such as "-ing" or "-ness" are stored only once. This is meant for
+	// read-only dictionaries, so the trie must be empty beforehand and add can't be used afterwards.
+	public void addFileMinimized(String filename) throws FileNotFoundException {
+		try {
+			addAllMinimized(WordReader.readAll(filename));
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Builds the given words as a minimized trie, using the incremental algorithm for sorted
+	// input from Daciuk et al.: each word only shares a prefix with the previous one, so
+	// everything below that prefix is finished and can be merged with an equivalent node
+	// that was already registered.
+	public void addAllMinimized(List<String> words) {
+		if (frozen) {
+			throw new UnsupportedOperationException("a frozen trie can't be changed");
+		}
+		if (minimized || root.childCount() > 0 || root.isShaded) {
+			throw new IllegalStateException("addAllMinimized needs an empty trie");
+		}
+		String[] sorted = words.toArray(new String[0]);
+		Arrays.sort(sorted);
+
+		Map<String, Node> register = new HashMap<>();
+		Map<Node, Integer> ids = new IdentityHashMap<>();
+		String previous = null;
+
+		for (String word : sorted) {
+			if (word.equals(previous)) {
+				continue;
+			}
+			// Follow the prefix this word shares with the previous one.
+			Node temp = root;
+			int i = 0;
+			while (i < word.length()) {
+				Node next = temp.getChild(word.charAt(i));
+				if (next == null) {
+					break;
+				}
+				temp = next;
+				i++;
+			}
+			// The rest of the previous word can now be minimized.
+			if (temp.childCount() > 0) {
+				replaceOrRegister(temp, register, ids);
+			}
+			for (; i < word.length(); i++) {
+				temp = temp.getOrAddChild(word.charAt(i));
+			}
+			temp.setIsShaded(true);
+			size++;
+			previous = word;
+		}
+		if (root.childCount() > 0) {
+			replaceOrRegister(root, register, ids);
+		}
+		minimized = true;
+	}
+
+	// Minimizes the most recently added branch below node: the last child is either swapped
+	// for an equivalent node from the register, or becomes the registered node itself.
+	private void replaceOrRegister(Node node, Map<String, Node> register, Map<Node, Integer> ids) {
+		int last = node.childCount() - 1;
+		Node child = node.childAt(last);
+		if (child.childCount() > 0 && !ids.containsKey(child.childAt(child.childCount() - 1))) {
+			replaceOrRegister(child, register, ids);
+		}
+
+		// Two nodes are equivalent when they agree on shading and have the same
+		// characters leading to the same (already registered) children.
+		StringBuilder signature = new StringBuilder();
+		signature.append(child.isShaded ? '1' : '0');
+		for (int i = 0; i < child.childCount(); i++) {
+			int id = ids.get(child.childAt(i));
+			signature.append(child.keys[i]).append((char) (id >>> 16)).append((char) id);
+		}
+
+		Node existing = register.get(signature.toString());
+		if (existing != null) {
+			node.replaceChild(last, existing);
+		} else {
+			register.put(signature.toString(), child);
+			ids.put(child, ids.size());
+		}
+	}
+
+	// Counts the distinct nodes in the trie, not including the root. Shared nodes in a
+	// minimized trie are only counted once.
+	public int nodeCount() {
+		Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		ArrayDeque<Node> pending = new ArrayDeque<>();
+		pending.push(root);
+		while (!pending.isEmpty()) {
+			Node temp = pending.pop();
+			for (int i = 0; i < temp.childCount(); i++) {
+				if (seen.add(temp.childAt(i))) {
+					pending.push(temp.childAt(i));
+				}
+			}
+		}
+		return seen.size();
+	}
+
+	// Writes the trie to a binary dictionary file that MappedDictionary can answer queries from
+	// without rebuilding anything. See MappedDictionary for the layout. Nodes are written children
+	// first, so every child offset is known by the time its parent is written, and nodes shared in
+	// a minimized trie are written only once.
+	public void compile(String filename) throws IOException {
+		int rootOffset;
+		int wordCount;
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+			out.writeInt(MappedDictionary.MAGIC);
+			out.writeInt(MappedDictionary.VERSION);
+			out.writeInt(0); // word count and root offset are patched in below
+			out.writeInt(0);
+
+			Map<Node, Integer> offsets = new IdentityHashMap<>();
+			Map<Node, Integer> wordCounts = new IdentityHashMap<>();
+			rootOffset = writeNode(out, root, offsets, wordCounts);
+			wordCount = wordCounts.get(root);
+		}
+		try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+			file.seek(8);
+			file.writeInt(wordCount);
+			file.writeInt(rootOffset);
+		}
+	}
+
+	// Writes node and everything below it, returning the offset node was written at.
+	private int writeNode(DataOutputStream out, Node node, Map<Node, Integer> offsets,
+			Map<Node, Integer> wordCounts) throws IOException {
+		Integer written = offsets.get(node);
+		if (written != null) {
+			return written;
 		}
+		int[] childOffsets = new int[node.childCount()];
+		int words = node.isShaded ? 1 : 0;
+		for (int i = 0; i < node.childCount(); i++) {
+			childOffsets[i] = writeNode(out, node.childAt(i), offsets, wordCounts);
+			words += wordCounts.get(node.childAt(i));
+		}
+
+		int offset = out.size();
+		out.writeInt(node.childCount() << 1 | (node.isShaded ? 1 : 0));
+		for (int i = 0; i < node.childCount(); i++) {
+			out.writeChar(node.keyAt(i));
+		}
+		for (int i = 0; i < node.childCount(); i++) {
+			out.writeInt(childOffsets[i]);
+		}
+		offsets.put(node, offset);
+		wordCounts.put(node, words);
+		return offset;
 	}
 
 	// Autocomplete, assisted by the recursiveTrieSearch method, takes the
 	// string argument
 	// and completes it with all of the possible valid words.
+	@Override
 	public Set<String> autocomplete(String s) {
 		Set<String> result = new HashSet<>();
 		Node temp = root;
 		int charCount = 0;
 
-		// This first nested loop is to check if the string s is in the trie.
+		// This first loop is to check if the string s is in the trie.
 		// If not, then an empty set is immediately returned.
 		for (int i = 0; i < s.length(); i++) {
-			for (Node j : temp.children) {
-				if (s.charAt(i) == j.data) {
-					temp = j;
-					charCount++;
-				}
+			temp = temp.getChild(s.charAt(i));
+			if (temp == null) {
+				recordNodesVisited(i);
+				return result;
 			}
 		}
 
-		if (charCount < s.length()) {
-			return result;
-		}
-
 		// Now, a curString variable is created to add complete words to the
 		// string if that node
 		// is shaded.
@@ -147,7 +708,8 @@ public class TrieSpellChecker {
 		}
 
 		// If there is more to be done, the recursiveTrieSearch is called.
-		recursiveTrieSearch(result, curString, temp);
+		int visited = recursiveTrieSearch(result, curString, temp);
+		recordNodesVisited(s.length() + visited);
 
 		return result;
 	}
@@ -156,121 +718,380 @@ public class TrieSpellChecker {
 	// This method continues where the previous one left off, continuing down
 	// the trie.
 	// If shaded nodes are found, they add the string argument plus all
-	// encountered letters to our set.
-	public void recursiveTrieSearch(Set<String> a, String s, Node i) {
-		for (Node j : i.children) {
-			// If we come to the end of the trie, which means children will be
-			// empty, then we check if that node is shaded.
-			// If so, that word is added.
-			if (i.children.size() == 0) {
-				if (j.isShaded) {
-					a.add(s + j.data);
+	// encountered letters to our set. Returns the number of nodes visited below i.
+	public int recursiveTrieSearch(Set<String> a, String s, Node i) {
+		int visited = i.childCount();
+		for (int n = 0; n < i.childCount(); n++) {
+			Node j = i.childAt(n);
+			char letter = i.keyAt(n);
+			// If that node is shaded, the word ending there is added.
+			if (j.isShaded) {
+				a.add(s + letter);
+			}
+			// Here is where we recursively call, adding the previously
+			// explored letter to the string. Leaves have no children, so the
+			// recursion stops there.
+			if (j.childCount() > 0) {
+				visited += recursiveTrieSearch(a, s + letter, j);
+			}
+		}
+		return visited;
+	}
+
+	// Returns the words that start with s one at a time, in alphabetical order. Nothing is
+	// collected up front: the iterator walks the trie with an explicit stack and a single
+	// reusable character buffer, so its memory depends on the word length rather than on the
+	// number of completions. The trie shouldn't be changed while the iterator is in use.
+	public Iterator<String> completions(String s) {
+		return completions(s, null);
+	}
+
+	// Like completions(s), but resumes after cursor: only completions that come after cursor
+	// alphabetically are returned. Passing the last word of one page continues with the next
+	// page without starting over. A null cursor starts from the beginning.
+	public Iterator<String> completions(String s, String cursor) {
+		Node temp = root;
+		for (int i = 0; i < s.length() && temp != null; i++) {
+			temp = temp.getChild(s.charAt(i));
+		}
+		return new CompletionIterator(temp, s, cursor);
+	}
+
+	// Returns the completions of s after cursor as a lazy, ordered stream.
+	public Stream<String> completionStream(String s, String cursor) {
+		Spliterator<String> spliterator = Spliterators.spliteratorUnknownSize(completions(s, cursor),
+				Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL);
+		return StreamSupport.stream(spliterator, false);
+	}
+
+	// Returns the next (at most) limit completions of s after cursor. The last word of the page
+	// is the cursor for the page after it.
+	public List<String> completionPage(String s, String cursor, int limit) {
+		List<String> page = new ArrayList<>();
+		Iterator<String> words = completions(s, cursor);
+		while (page.size() < limit && words.hasNext()) {
+			page.add(words.next());
+		}
+		return page;
+	}
+
+	// Iterates over the words below one node in alphabetical order. Frame d of the stack holds
+	// a node d characters below the starting node and the index of the next child to visit
+	// there, and buffer holds the characters leading to the node on top of the stack.
+	private static class CompletionIterator implements Iterator<String> {
+		private Node[] nodes = new Node[16];
+		private int[] next = new int[16];
+		private char[] buffer;
+		private int length;
+		private int depth = -1; // top of the stack, -1 once the traversal is finished
+		private String pending; // the next word, once it has been found
+		private boolean ready; // whether pending is up to date
+
+		public CompletionIterator(Node start, String prefix, String cursor) {
+			if (start == null) {
+				return;
+			}
+			buffer = new char[prefix.length() + 16];
+			prefix.getChars(0, prefix.length(), buffer, 0);
+			length = prefix.length();
+			depth = 0;
+			nodes[0] = start;
+
+			if (cursor == null || cursor.compareTo(prefix) < 0) {
+				// Start from the beginning, which is the prefix itself if it is a word.
+				if (start.isShaded) {
+					pending = prefix;
+					ready = true;
 				}
+			} else if (!cursor.startsWith(prefix)) {
+				depth = -1; // the cursor is past every completion of the prefix
 			} else {
-				if (j.isShaded) {
-					a.add(s + j.data);
+				// Follow the cursor down as far as the trie goes. At each node, the children up
+				// to and including the cursor's letter are already done.
+				for (int i = prefix.length(); i < cursor.length(); i++) {
+					Node node = nodes[depth];
+					int index = node.indexOf(cursor.charAt(i));
+					if (index < 0) {
+						next[depth] = -index - 1;
+						break;
+					}
+					next[depth] = index + 1;
+					push(node.childAt(index), node.keyAt(index));
 				}
-				// Here is where we recursively call, adding the previously
-				// explored letter to the trie.
-				recursiveTrieSearch(a, s + j.data, j);
 			}
 		}
+
+		private void push(Node node, char c) {
+			depth++;
+			if (depth == nodes.length) {
+				nodes = Arrays.copyOf(nodes, depth * 2);
+				next = Arrays.copyOf(next, depth * 2);
+			}
+			if (length == buffer.length) {
+				buffer = Arrays.copyOf(buffer, length * 2);
+			}
+			nodes[depth] = node;
+			next[depth] = 0;
+			buffer[length++] = c;
+		}
+
+		// Moves through the trie until the next shaded node, leaving its word in pending.
+		private void advance() {
+			pending = null;
+			while (depth >= 0) {
+				Node node = nodes[depth];
+				int i = next[depth];
+				if (i < node.childCount()) {
+					next[depth] = i + 1;
+					push(node.childAt(i), node.keyAt(i));
+					if (nodes[depth].isShaded) {
+						pending = new String(buffer, 0, length);
+						return;
+					}
+				} else {
+					depth--;
+					length--;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (!ready) {
+				advance();
+				ready = true;
+			}
+			return pending != null;
+		}
+
+		@Override
+		public String next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			ready = false;
+			return pending;
+		}
+	}
+
+	// Returns the (at most) k highest scoring words that start with s, best first. Words with
+	// equal scores come out in alphabetical order.
+	// This is a best-first search: the queue holds words and subtrees, each ranked by its score or
+	// by the best score below it, so only the branches that can still produce one of the top k
+	// words are ever opened. The cost depends on k and the word length, not on the subtree size.
+	public List<String> topK(String s, int k) {
+		List<String> result = new ArrayList<>();
+		Node temp = root;
+		for (int i = 0; i < s.length() && temp != null; i++) {
+			temp = temp.getChild(s.charAt(i));
+		}
+		if (temp == null || k <= 0) {
+			return result;
+		}
+
+		PriorityQueue<Candidate> queue = new PriorityQueue<>();
+		queue.add(new Candidate(temp, s, temp.maxScore, false));
+		while (!queue.isEmpty() && result.size() < k) {
+			Candidate best = queue.poll();
+			if (best.isWord) {
+				result.add(best.text);
+				continue;
+			}
+			Node node = best.node;
+			if (node.isShaded) {
+				queue.add(new Candidate(node, best.text, node.score, true));
+			}
+			for (int i = 0; i < node.childCount(); i++) {
+				Node child = node.childAt(i);
+				queue.add(new Candidate(child, best.text + node.keyAt(i), child.maxScore, false));
+			}
+		}
+		return result;
+	}
+
+	// Returns the (at most) limit best words that start with something within maxDistance edits
+	// of prefix, such as "receive" for "recie". Closer words come first, then higher scores, then
+	// alphabetical order. See FuzzyPrefixSearch, which can also carry on as more is typed.
+	public List<String> fuzzyAutocomplete(String prefix, int maxDistance, int limit) {
+		return fuzzyPrefixSearch(maxDistance).update(prefix).top(limit);
+	}
+
+	// Starts a fuzzy autocomplete session for a search box, to be updated after every keystroke.
+	public FuzzyPrefixSearch fuzzyPrefixSearch(int maxDistance) {
+		return new FuzzyPrefixSearch(this, maxDistance);
+	}
+
+	// An entry in the topK queue: either a finished word with its score, or a subtree with the
+	// best score found anywhere inside it.
+	private static class Candidate implements Comparable<Candidate> {
+		private final Node node;
+		private final String text;
+		private final long priority;
+		private final boolean isWord;
+
+		public Candidate(Node node, String text, long priority, boolean isWord) {
+			this.node = node;
+			this.text = text;
+			this.priority = priority;
+			this.isWord = isWord;
+		}
+
+		// Higher priority first, then alphabetical. A subtree's text comes before every word
+		// inside it, so equal scores still come out in alphabetical order.
+		public int compareTo(Candidate other) {
+			if (priority != other.priority) {
+				return Long.compare(other.priority, priority);
+			}
+			int compare = text.compareTo(other.text);
+			if (compare != 0) {
+				return compare;
+			}
+			return isWord == other.isWord ? 0 : (isWord ? -1 : 1);
+		}
+	}
+
+	// Passes each word matching pattern (see WordPattern for the syntax, such as "c?t" or
+	// "[aeiou]??ing") to action as soon as it is found, in alphabetical order, and stops after
+	// limit words. Returns the number of words passed on.
+	// The pattern's automaton is walked in step with the trie, and a branch is dropped as soon as
+	// no state is left, so a pattern with a fixed beginning or a fixed length only visits the few
+	// nodes that could match. Where only one character can come next, only that child is visited.
+	public int match(WordPattern pattern, int limit, Consumer<String> action) {
+		long states = pattern.start();
+		int[] counts = new int[2]; // words found and nodes visited
+		if (limit > 0 && root.isShaded && pattern.accepts(states)) {
+			action.accept("");
+			counts[0]++;
+		}
+		if (counts[0] < limit) {
+			matchRecurse(pattern, root, states, new StringBuilder(), limit, action, counts);
+		}
+		recordNodesVisited(counts[1]);
+		return counts[0];
+	}
+
+	public int match(String pattern, int limit, Consumer<String> action) {
+		return match(new WordPattern(pattern), limit, action);
+	}
+
+	// Returns the (at most) limit words matching pattern, in alphabetical order.
+	public List<String> match(String pattern, int limit) {
+		List<String> result = new ArrayList<>();
+		match(new WordPattern(pattern), limit, result::add);
+		return result;
+	}
+
+	// Visits the children of node, which is reached by path with the pattern in states.
+	private void matchRecurse(WordPattern pattern, Node node, long states, StringBuilder path, int limit,
+			Consumer<String> action, int[] counts) {
+		int from = 0;
+		int to = node.childCount();
+		int only = pattern.onlyNext(states);
+		if (only >= 0) {
+			int index = node.indexOf((char) only);
+			if (index < 0) {
+				return;
+			}
+			from = index;
+			to = index + 1;
+		}
+		for (int i = from; i < to && counts[0] < limit; i++) {
+			char letter = node.keyAt(i);
+			long next = pattern.step(states, letter);
+			counts[1]++;
+			if (next == 0) {
+				continue; // nothing below can match
+			}
+			Node child = node.childAt(i);
+			path.append(letter);
+			if (child.isShaded && pattern.accepts(next)) {
+				action.accept(path.toString());
+				counts[0]++;
+			}
+			if (child.childCount() > 0 && counts[0] < limit) {
+				matchRecurse(pattern, child, next, path, limit, action, counts);
+			}
+			path.setLength(path.length() - 1);
+		}
 	}
 
 	// CloseMatches with the assistance of CloseMatchRecurse takes a string and
 	// checks if it can be
 	// made into a string in the trie with one change, either insertion,
-	// deletion, or replacement.
+	// deletion, or replacement. If s is already in the trie, it is included too.
+	@Override
 	public Set<String> closeMatches(String s) {
+		return closeMatches(s, 1, false);
+	}
+
+	// Returns every word in the trie within maxDistance (1 to 3) insertions, deletions or
+	// replacements of s. If transpositions is true, swapping two neighbouring letters also
+	// counts as a single change.
+	// Rather than trying out candidate strings, the trie is walked once while one row of the
+	// edit distance table between s and the current path is filled in per character. A
+	// branch is abandoned as soon as every entry in its row is over maxDistance, since going
+	// deeper can only make the distance larger.
+	public Set<String> closeMatches(String s, int maxDistance, boolean transpositions) {
+		if (maxDistance < 1 || maxDistance > 3) {
+			throw new IllegalArgumentException("maxDistance must be between 1 and 3: " + maxDistance);
+		}
 		Set<String> result = new HashSet<>();
-		// In the event that s is already a string that can be made in the trie,
-		// it is added.
-		if (this.contains(s)) {
-			result.add(s);
+
+		// No word longer than s.length() + maxDistance can match, so the rows and the path
+		// buffer can be allocated once up front.
+		int[][] rows = new int[s.length() + maxDistance + 2][s.length() + 1];
+		char[] path = new char[s.length() + maxDistance + 1];
+		for (int j = 0; j <= s.length(); j++) {
+			rows[0][j] = j;
+		}
+		if (root.isShaded && s.length() <= maxDistance) {
+			result.add("");
+		}
+		long[] counts = new long[2]; // nodes visited and candidates tried, for the metrics
+		closeMatchRecurse(result, s, maxDistance, transpositions, root, 0, path, rows, counts);
+		if (metrics != null) {
+			metrics.recordNodesVisited(counts[0]);
+			metrics.recordCandidates(counts[1]);
 		}
-		closeMatchRecurse(result, s, this.root);
 
 		return result;
 	}
 
-	public void closeMatchRecurse(Set<String> a, String s, Node i) {
-		// In order to ensure only one degree of error is corrected, a boolean
-		// is created.
-		boolean oneEdit = false;
-
-		// Finally, The children of the current node (i) are iterated through to
-		// check for solutions.
-		for (Node j : i.children) {
-			// Adds a character to the beginning
-			if (this.contains(j.data + s)) {
-				a.add(j.data + s);
-				oneEdit = true;
-			}
-			// Replaces a character at the beginning
-			if (this.contains(j.data + s.substring(1, s.length()))) {
-				a.add(j.data + s.substring(1, s.length()));
-				oneEdit = true;
-			}
-			// Removes a character from the beginning
-			if (this.contains(s.substring(1, s.length()))) {
-				a.add(s.substring(1, s.length()));
-				oneEdit = true;
-			}
-			// Removes a character from the end
-			if (this.contains(s.substring(0, s.length() - 1))) {
-				a.add(s.substring(0, s.length() - 1));
-				oneEdit = true;
-			}
-			// Adds a character to the end
-			if (this.contains(s + j.data)) {
-				a.add(s + j.data);
-				oneEdit = true;
-			}
-			// Replaces a character at the end
-			if (this.contains(s.substring(0, s.length() - 1) + j.data)) {
-				a.add(s.substring(0, s.length() - 1) + j.data);
-				oneEdit = true;
-			}
-			// For the middle of the word, a new iterative loop is needed.
-			for (int n = 0; n < s.length(); n++) {
-				// First, we check for replacements for internal letters by
-				// saving the letters before and after what we seek to replace.
-				// Then, by creating a substring of one character, we ensure
-				// that replace ONLY replaces it with a character in node j.
-				if (this.contains(s.substring(0, n)
-						+ s.substring(n, n + 1).replace(s.charAt(n), j.data)
-						+ s.substring(n + 1))) {
-					a.add(s.substring(0, n)
-							+ s.substring(n, n + 1)
-									.replace(s.charAt(n), j.data)
-							+ s.substring(n + 1));
-					oneEdit = true;
-				}
-				// A similar process is repeated here without replacing and
-				// simply adding a new letter from j.
-				if (this.contains(s.substring(0, n) + j.data + (s.substring(n)))) {
-					a.add(s.substring(0, n) + j.data + (s.substring(n)));
-					oneEdit = true;
-				}
-				// Finally, we take a letter out of the string entirely and
-				// check if it makes a string that is in the trie.
-				if (this.contains(s.substring(0, n) + s.substring(n + 1))) {
-					a.add(s.substring(0, n) + s.substring(n + 1));
-					oneEdit = true;
+	// Tries each child of node, which is reached by the first depth characters in path and whose
+	// row of the edit distance table is rows[depth]. Every child tried is a candidate (counts[1]),
+	// and the ones close enough to go into are counted as visited (counts[0]).
+	private void closeMatchRecurse(Set<String> a, String s, int maxDistance, boolean transpositions,
+			Node node, int depth, char[] path, int[][] rows, long[] counts) {
+		int[] previous = rows[depth];
+		int[] row = rows[depth + 1];
+		counts[1] += node.childCount();
+
+		for (int i = 0; i < node.childCount(); i++) {
+			char letter = node.keyAt(i);
+
+			// row[j] is the distance between the path plus this letter and the first j letters of s.
+			row[0] = depth + 1;
+			int best = row[0];
+			for (int j = 1; j <= s.length(); j++) {
+				int replace = previous[j - 1] + (s.charAt(j - 1) == letter ? 0 : 1);
+				int distance = Math.min(replace, Math.min(previous[j] + 1, row[j - 1] + 1));
+				if (transpositions && depth > 0 && j > 1 && letter == s.charAt(j - 2)
+						&& path[depth - 1] == s.charAt(j - 1)) {
+					distance = Math.min(distance, rows[depth - 1][j - 2] + 1);
 				}
+				row[j] = distance;
+				best = Math.min(best, distance);
 			}
 
-		}
-		// This chain of checks insures that the length of the string never
-		// drops to 0,
-		// and that the above process is completed for every letter. If oneEdit
-		// is false,
-		// it means that no edits have been made for this word yet, and it must
-		// be run through again.
-		if (s.length() > 1) {
-			for (Node j : i.children) {
-				if (j.data == s.charAt(1) && !oneEdit) {
-					closeMatchRecurse(a, s.substring(1), j);
+			if (best <= maxDistance) {
+				counts[0]++;
+				Node child = node.childAt(i);
+				path[depth] = letter;
+				if (child.isShaded && row[s.length()] <= maxDistance) {
+					a.add(new String(path, 0, depth + 1));
+				}
+				if (child.childCount() > 0) {
+					closeMatchRecurse(a, s, maxDistance, transpositions, child, depth + 1, path, rows, counts);
 				}
 			}
 		}
@@ -280,7 +1101,10 @@ public class TrieSpellChecker {
 		TrieSpellChecker testTrie = new TrieSpellChecker();
 
 		// testing of addFile and contains methods
-		testTrie.addFile("wordlist_English.txt");
+		long start = System.nanoTime();
+		long count = testTrie.addFile("wordlist_English.txt");
+		double seconds = (System.nanoTime() - start) / 1000000000.0;
+		System.out.println("loaded " + count + " words at " + (long) (count / seconds) + " words per second");
 		// These four statements test out the contain method, including
 		// mispellings.
 		System.out.println(testTrie.contains("abandon"));
@@ -293,5 +1117,13 @@ public class TrieSpellChecker {
 		System.out.println(testTrie.autocomplete("legend"));
 		// Wait for it...
 		System.out.println(testTrie.closeMatches("ary"));
+
+		// The minimized build should answer the same while using far fewer nodes.
+		TrieSpellChecker minimizedTrie = new TrieSpellChecker();
+		minimizedTrie.addFileMinimized("wordlist_English.txt");
+		System.out.println(minimizedTrie.contains("abandonment"));
+		System.out.println(minimizedTrie.autocomplete("legend"));
+		System.out.println(minimizedTrie.closeMatches("ary"));
+		System.out.println("nodes in trie: " + testTrie.nodeCount() + ", nodes minimized: " + minimizedTrie.nodeCount());
 	}
 }
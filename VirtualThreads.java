@@ -0,0 +1,40 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Creates executors that run each task on its own virtual thread when the JDK has them (Java 21
+// and later), and otherwise fall back to a pool of platform threads, so the same code runs on
+// both.
+
+class VirtualThreads {
+
+	// Returns an executor that starts a new virtual thread per task, or a fixed pool of
+	// fallbackThreads platform threads if virtual threads aren't available.
+	static ExecutorService newPerTaskExecutor(int fallbackThreads) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(fallbackThreads);
+		}
+	}
+
+	// Returns an executor that starts a new virtual thread per task, or a new platform thread per
+	// task (reusing idle ones) if virtual threads aren't available. Meant for tasks that spend
+	// most of their time blocked, such as serving a connection, which could use up a fixed pool.
+	static ExecutorService newPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	// Returns whether newPerTaskExecutor hands out virtual threads on this JDK.
+	static boolean available() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+}
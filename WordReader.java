@@ -0,0 +1,101 @@
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Reads the whitespace-separated words of a UTF-8 text file one at a time. The file is read
+// through a large NIO buffer and split on whitespace bytes by hand, so unlike Scanner there is
+// no regex matching and only the current word is held in memory, whatever the size of the file.
+
+public class WordReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private byte[] word = new byte[64];
+	private long bytesRead;
+
+	public WordReader(String filename) throws FileNotFoundException {
+		try {
+			channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			throw new FileNotFoundException(filename);
+		} catch (IOException e) {
+			FileNotFoundException notFound = new FileNotFoundException(filename);
+			notFound.initCause(e);
+			throw notFound;
+		}
+		buffer.flip(); // start out with nothing left to read
+	}
+
+	// Returns the next word in the file, or null once the end of the file is reached.
+	public String next() throws IOException {
+		int length = 0;
+		while (true) {
+			if (!buffer.hasRemaining()) {
+				buffer.clear();
+				int read = channel.read(buffer);
+				buffer.flip();
+				if (read == -1) {
+					return length > 0 ? new String(word, 0, length, StandardCharsets.UTF_8) : null;
+				}
+				bytesRead += read;
+			}
+
+			byte[] bytes = buffer.array();
+			int position = buffer.position();
+			int limit = buffer.limit();
+			while (position < limit) {
+				byte b = bytes[position++];
+				if (isWhitespace(b)) {
+					if (length > 0) {
+						buffer.position(position);
+						return new String(word, 0, length, StandardCharsets.UTF_8);
+					}
+				} else {
+					if (length == word.length) {
+						word = Arrays.copyOf(word, length * 2);
+					}
+					word[length++] = b;
+				}
+			}
+			buffer.position(position);
+		}
+	}
+
+	// The ASCII whitespace characters. Bytes of multi-byte UTF-8 characters are all negative,
+	// so they can never be mistaken for one of these.
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
+	}
+
+	// Returns the number of bytes read from the file so far.
+	public long bytesRead() {
+		return bytesRead;
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	// Reads every word in the file into a list, for the builders that need the whole word list at once.
+	public static List<String> readAll(String filename) throws IOException {
+		List<String> words = new ArrayList<>();
+		try (WordReader reader = new WordReader(filename)) {
+			String word;
+			while ((word = reader.next()) != null) {
+				words.add(word);
+			}
+		}
+		return words;
+	}
+}
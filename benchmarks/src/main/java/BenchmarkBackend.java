@@ -0,0 +1,65 @@
+import java.io.FileNotFoundException;
+import java.util.Set;
+
+import benchmarks.Backend;
+
+// Hands TrieSpellChecker or BSTSpellChecker to the JMH benchmarks, which sit in a package and so
+// can only use them through Backend.
+
+public class BenchmarkBackend implements Backend {
+
+	private final String name;
+	private final TrieSpellChecker trie; // whichever one this is, the other is null
+	private final BSTSpellChecker bst;
+	private final SpellChecker checker;
+
+	public BenchmarkBackend(String name) {
+		this.name = name;
+		if (name.equals("trie")) {
+			trie = new TrieSpellChecker();
+			bst = null;
+			checker = trie;
+		} else if (name.equals("bst")) {
+			trie = null;
+			bst = new BSTSpellChecker();
+			checker = bst;
+		} else {
+			throw new IllegalArgumentException("unknown backend " + name + ", expected trie or bst");
+		}
+	}
+
+	@Override
+	public Backend empty() {
+		return new BenchmarkBackend(name);
+	}
+
+	@Override
+	public void add(String word) {
+		checker.add(word);
+	}
+
+	@Override
+	public long addFile(String filename) throws FileNotFoundException {
+		return trie != null ? trie.addFile(filename) : bst.addFile(filename);
+	}
+
+	@Override
+	public boolean contains(String word) {
+		return checker.contains(word);
+	}
+
+	@Override
+	public Set<String> autocomplete(String prefix) {
+		return checker.autocomplete(prefix);
+	}
+
+	@Override
+	public Set<String> closeMatches(String word) {
+		return checker.closeMatches(word);
+	}
+
+	@Override
+	public int size() {
+		return checker.size();
+	}
+}
@@ -0,0 +1,37 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.Set;
+
+// One spell checker as the benchmarks see it. JMH won't run benchmarks in the default package,
+// and code in a package can't name the default package's classes, so the checkers are reached
+// through this interface instead: BenchmarkBackend, in the default package, implements it, and
+// create finds that class by name. The lookup happens once per trial, so the calls being timed
+// are plain interface calls.
+
+public interface Backend {
+
+	// Returns a new, empty checker of the same kind.
+	Backend empty();
+
+	void add(String word);
+
+	long addFile(String filename) throws IOException;
+
+	boolean contains(String word);
+
+	Set<String> autocomplete(String prefix);
+
+	Set<String> closeMatches(String word);
+
+	int size();
+
+	// Returns an empty checker of the named kind, "trie" or "bst".
+	static Backend create(String name) {
+		try {
+			return (Backend) Class.forName("BenchmarkBackend").getConstructor(String.class).newInstance(name);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("can't create the " + name + " backend", e);
+		}
+	}
+}
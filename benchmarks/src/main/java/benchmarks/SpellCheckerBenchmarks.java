@@ -0,0 +1,139 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Benchmarks both spell checkers at several dictionary sizes, in throughput and average time.
+// Run them with gradle :benchmarks:jmh, which adds the gc profiler for the allocation rate.
+// Each size is a sample of the word list, shuffled with a fixed seed so every run and every
+// backend gets the same words, and so the BST isn't fed alphabetized input. Misses are the
+// sampled words with "qx" on the end, and the autocomplete prefixes are their first 1 and first
+// 5 characters. Lookups go round the sample in order, so consecutive calls hit different words.
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SpellCheckerBenchmarks {
+
+	@Param({ "trie", "bst" })
+	public String backend;
+
+	@Param({ "10000", "100000", "0" }) // 0 is the whole list
+	public int size;
+
+	@Param("wordlist_English.txt")
+	public String wordList;
+
+	private String[] hits;
+	private String[] misses;
+	private String[] shortPrefixes;
+	private String[] longPrefixes;
+	private String sampleFile; // the sample, one word per line, for addFile
+	private Backend loaded; // a checker holding the sample, for the queries
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		String text = new String(Files.readAllBytes(Paths.get(wordList)), StandardCharsets.UTF_8);
+		List<String> all = new ArrayList<>(Arrays.asList(text.trim().split("\\s+")));
+		Collections.shuffle(all, new Random(42));
+		List<String> words = all.subList(0, size <= 0 || size > all.size() ? all.size() : size);
+
+		hits = words.toArray(new String[0]);
+		misses = new String[hits.length];
+		shortPrefixes = new String[hits.length];
+		longPrefixes = new String[hits.length];
+		for (int i = 0; i < hits.length; i++) {
+			misses[i] = hits[i] + "qx";
+			shortPrefixes[i] = hits[i].substring(0, 1);
+			longPrefixes[i] = hits[i].substring(0, Math.min(5, hits[i].length()));
+		}
+
+		File file = File.createTempFile("benchmark", ".txt");
+		file.deleteOnExit();
+		try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+			for (String word : hits) {
+				out.println(word);
+			}
+		}
+		sampleFile = file.getPath();
+
+		loaded = Backend.create(backend);
+		loaded.addFile(sampleFile);
+	}
+
+	// Returns the index of the next word to look up.
+	private int next() {
+		int i = next;
+		next = i + 1 == hits.length ? 0 : i + 1;
+		return i;
+	}
+
+	// Adds the whole sample to an empty checker, one word at a time.
+	@Benchmark
+	public Backend add() {
+		Backend fresh = loaded.empty();
+		for (String word : hits) {
+			fresh.add(word);
+		}
+		return fresh;
+	}
+
+	@Benchmark
+	public Backend addFile() throws IOException {
+		Backend fresh = loaded.empty();
+		fresh.addFile(sampleFile);
+		return fresh;
+	}
+
+	@Benchmark
+	public boolean containsHit() {
+		return loaded.contains(hits[next()]);
+	}
+
+	@Benchmark
+	public boolean containsMiss() {
+		return loaded.contains(misses[next()]);
+	}
+
+	@Benchmark
+	public Set<String> autocompleteShort() {
+		return loaded.autocomplete(shortPrefixes[next()]);
+	}
+
+	@Benchmark
+	public Set<String> autocompleteLong() {
+		return loaded.autocomplete(longPrefixes[next()]);
+	}
+
+	@Benchmark
+	public Set<String> closeMatches() {
+		return loaded.closeMatches(misses[next()]);
+	}
+}